@@ -1,29 +1,38 @@
 package com.dozingcatsoftware.vectorpinball.editor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.scene.canvas.Canvas;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Paint;
-import javafx.scene.shape.ArcType;
+import javafx.scene.transform.Transform;
+import javafx.stage.Window;
 
 import com.dozingcatsoftware.vectorpinball.editor.elements.EditableField;
 import com.dozingcatsoftware.vectorpinball.editor.elements.EditableFieldElement;
-import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
 import com.dozingcatsoftware.vectorpinball.model.Color;
 import com.dozingcatsoftware.vectorpinball.model.Field;
 import com.dozingcatsoftware.vectorpinball.model.IFieldRenderer;
 import com.dozingcatsoftware.vectorpinball.model.Point;
+import com.dozingcatsoftware.vectorpinball.model.RenderSnapshot;
 
 public class FxCanvasRenderer implements IFieldRenderer {
 
     static final double DEFAULT_SCALE = 25;
-    // Zoom levels greater than 2 result in poor performance using the simple
-    // approach of creating a larger canvas.
-    static final double[] SCALE_RATIOS = {1.0/2, 3.0/4, 1.0, 3.0/2, 2.0};
+    // The canvas only covers the visible viewport (see setViewport), so zoom levels don't affect
+    // the canvas size.
+    static final double[] SCALE_RATIOS = {1.0/2, 3.0/4, 1.0, 3.0/2, 2.0, 3.0, 4.0, 6.0, 8.0};
     static final int DEFAULT_SCALE_RATIO_INDEX = 2;
 
     private Canvas canvas;
@@ -36,23 +45,65 @@ public class FxCanvasRenderer implements IFieldRenderer {
     private int scaleRatioIndex = DEFAULT_SCALE_RATIO_INDEX;
     private double xOffset = -1.5;
     private double yOffset = -1.5;
+    // Position of the canvas within the full zoomed table, and the full table's height in pixels.
+    private double viewportX = 0;
+    private double viewportY = 0;
+    private double contentHeight = -1;
 
     Point dragStartPoint;
     Point lastDragPoint;
 
+    // Image of the static layer of field snapshots, redrawn when the layer or the canvas changes.
+    private Canvas staticLayerCanvas;
+    private WritableImage staticLayerImage;
+    private RenderSnapshot cachedStaticLayer;
+    private double cachedStaticLayerScale;
+    private double cachedStaticLayerViewportX;
+    private double cachedStaticLayerViewportY;
+    private double cachedStaticLayerOutputScaleX;
+    private double cachedStaticLayerOutputScaleY;
+
+    // Redraws requested from other threads are done on the next JavaFX pulse. However many
+    // requests arrive between pulses, only one draw happens; the rest are counted as merged.
+    private final AtomicBoolean drawPending = new AtomicBoolean();
+    private final AtomicLong requestedFrames = new AtomicLong();
+    private long drawnFrames;
+    private final AnimationTimer pulseTimer = new AnimationTimer() {
+        @Override public void handle(long now) {
+            if (drawPending.getAndSet(false)) {
+                drawnFrames++;
+                draw();
+            }
+        }
+    };
+
     public void setCanvas(Canvas c) {
         canvas = c;
         context = c.getGraphicsContext2D();
+        cachedStaticLayer = null;
+    }
+
+    /**
+     * Sets the region of the full zoomed table that the canvas shows: its top left corner at
+     * (x, y) in pixels, within a table whose height is contentHeight pixels. Drawing calls for
+     * anything outside the canvas are skipped.
+     */
+    public void setViewport(double x, double y, double contentHeight) {
+        this.viewportX = x;
+        this.viewportY = y;
+        this.contentHeight = contentHeight;
     }
 
     public void setField(Field f) {
         field = f;
         editableField = null;
+        pulseTimer.start();
     }
 
     public void setEditableField(EditableField f) {
         editableField = f;
         field = null;
+        pulseTimer.stop();
     }
 
     public void setUndoStack(UndoStack stack) {
@@ -63,64 +114,239 @@ public class FxCanvasRenderer implements IFieldRenderer {
         return javafx.scene.paint.Color.rgb(color.red, color.green, color.blue, color.alpha/255.0);
     }
 
+    double contentHeight() {
+        return (contentHeight >= 0) ? contentHeight : canvas.getHeight();
+    }
+
     double worldToPixelX(double x) {
-        return scale * (x-xOffset);
+        return scale * (x-xOffset) - viewportX;
     }
 
     double worldToPixelY(double y) {
-        return canvas.getHeight() - (scale * (y-yOffset));
+        return contentHeight() - (scale * (y-yOffset)) - viewportY;
     }
 
     double pixelToWorldX(double x) {
-        return x/scale + xOffset;
+        return (x + viewportX)/scale + xOffset;
     }
 
     double pixelToWorldY(double y) {
-        return (canvas.getHeight()-y)/scale + yOffset;
+        return (contentHeight() - (y + viewportY))/scale + yOffset;
+    }
+
+    /** Returns true if a rectangle in pixel coordinates is entirely outside the canvas. */
+    boolean isOutsideCanvas(double minX, double minY, double maxX, double maxY) {
+        // Allow for line width.
+        return (maxX < -1 || maxY < -1 || minX > canvas.getWidth() + 1 || minY > canvas.getHeight() + 1);
     }
 
     double worldToPixelDistance(double dist) {
         return scale * dist;
     }
 
+    /**
+     * Drawing calls for one color accumulated during a frame. Lines and circle outlines are
+     * stroked as one path, and filled circles and polygons filled as another. Overlapping shapes
+     * in one path are only painted once, which would change how translucent colors look, so
+     * batches for those are flushed after every call (see isOpaque).
+     */
+    static class ColorBatch {
+        final Paint paint;
+        final boolean isOpaque;
+        // x1, y1, x2, y2 in pixels for each line.
+        double[] lines = new double[64];
+        int lineCoordinateCount;
+        // x, y, radius in pixels for each circle.
+        double[] frameCircles = new double[24];
+        int frameCircleCoordinateCount;
+        double[] fillCircles = new double[24];
+        int fillCircleCoordinateCount;
+        // Point count followed by x and y pixel coordinates for each polygon.
+        double[] polygons = new double[32];
+        int polygonCoordinateCount;
+        boolean inFrame;
+
+        ColorBatch(Paint paint, boolean isOpaque) {
+            this.paint = paint;
+            this.isOpaque = isOpaque;
+        }
+
+        static double[] ensureCapacity(double[] array, int size) {
+            return (size <= array.length) ? array : Arrays.copyOf(array, Math.max(size, 2*array.length));
+        }
+
+        void clear() {
+            lineCoordinateCount = frameCircleCoordinateCount = fillCircleCoordinateCount = polygonCoordinateCount = 0;
+            inFrame = false;
+        }
+    }
+
+    // Batches by color, which also caches the JavaFX Paint for each color.
+    static final int MAX_CACHED_BATCHES = 1024;
+    private final Map<Color, ColorBatch> colorBatches = new HashMap<>();
+    // Batches with drawing calls in the current frame, in the order their colors were first used.
+    private final List<ColorBatch> frameBatches = new ArrayList<>();
+
+    ColorBatch batchForColor(Color color) {
+        ColorBatch batch = colorBatches.get(color);
+        if (batch == null) {
+            if (colorBatches.size() >= MAX_CACHED_BATCHES) {
+                // Colors blended over time can create many values; forget those not in this frame.
+                colorBatches.values().removeIf(b -> !b.inFrame);
+            }
+            batch = new ColorBatch(toFxPaint(color), color.alpha == 255);
+            colorBatches.put(color, batch);
+        }
+        if (!batch.inFrame) {
+            batch.inFrame = true;
+            frameBatches.add(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Called after adding a drawing call to a batch. Translucent calls are drawn immediately, after
+     * everything before them, so that they're each composited separately and in order.
+     */
+    void drawIfTranslucent(ColorBatch batch) {
+        if (!batch.isOpaque) flushBatches();
+    }
+
     @Override public void drawLine(double x1, double y1, double x2, double y2, Color color) {
-        context.setStroke(toFxPaint(color));
-        context.beginPath();
-        context.moveTo(worldToPixelX(x1), worldToPixelY(y1));
-        context.lineTo(worldToPixelX(x2), worldToPixelY(y2));
-        context.stroke();
+        double px1 = worldToPixelX(x1), py1 = worldToPixelY(y1);
+        double px2 = worldToPixelX(x2), py2 = worldToPixelY(y2);
+        if (isOutsideCanvas(Math.min(px1, px2), Math.min(py1, py2), Math.max(px1, px2), Math.max(py1, py2))) return;
+        ColorBatch batch = batchForColor(color);
+        int n = batch.lineCoordinateCount;
+        double[] lines = batch.lines = ColorBatch.ensureCapacity(batch.lines, n + 4);
+        lines[n] = px1;
+        lines[n+1] = py1;
+        lines[n+2] = px2;
+        lines[n+3] = py2;
+        batch.lineCoordinateCount = n + 4;
+        drawIfTranslucent(batch);
     }
     @Override public void drawLine(float x1, float y1, float x2, float y2, Color color) {
         drawLine((double)x1, y1, x2, y2, color);
     }
 
     @Override public void fillCircle(double cx, double cy, double radius, Color color) {
-        context.setFill(toFxPaint(color));
-        context.fillArc(worldToPixelX(cx - radius), worldToPixelY(cy + radius),
-                worldToPixelDistance(radius*2), worldToPixelDistance(radius*2), 0, 360, ArcType.OPEN);
+        double px = worldToPixelX(cx), py = worldToPixelY(cy), pr = worldToPixelDistance(radius);
+        if (isOutsideCanvas(px - pr, py - pr, px + pr, py + pr)) return;
+        ColorBatch batch = batchForColor(color);
+        int n = batch.fillCircleCoordinateCount;
+        double[] circles = batch.fillCircles = ColorBatch.ensureCapacity(batch.fillCircles, n + 3);
+        circles[n] = px;
+        circles[n+1] = py;
+        circles[n+2] = pr;
+        batch.fillCircleCoordinateCount = n + 3;
+        drawIfTranslucent(batch);
     }
     @Override public void fillCircle(float cx, float cy, float radius, Color color) {
         fillCircle((double)cx, (double)cy, radius, color);
     }
 
     @Override public void frameCircle(double cx, double cy, double radius, Color color) {
-        context.setStroke(toFxPaint(color));
-        context.strokeArc(worldToPixelX(cx - radius), worldToPixelY(cy + radius),
-                worldToPixelDistance(radius*2), worldToPixelDistance(radius*2), 0, 360, ArcType.OPEN);
+        double px = worldToPixelX(cx), py = worldToPixelY(cy), pr = worldToPixelDistance(radius);
+        if (isOutsideCanvas(px - pr, py - pr, px + pr, py + pr)) return;
+        ColorBatch batch = batchForColor(color);
+        int n = batch.frameCircleCoordinateCount;
+        double[] circles = batch.frameCircles = ColorBatch.ensureCapacity(batch.frameCircles, n + 3);
+        circles[n] = px;
+        circles[n+1] = py;
+        circles[n+2] = pr;
+        batch.frameCircleCoordinateCount = n + 3;
+        drawIfTranslucent(batch);
     }
     @Override public void frameCircle(float cx, float cy, float radius, Color color) {
         frameCircle((double)cx, (double)cy, radius, color);
     }
 
     @Override public void fillPolygon(double[] xPoints, double[] yPoints, Color color) {
-        double[] pixelX = new double[xPoints.length];
-        double[] pixelY = new double[yPoints.length];
+        if (xPoints.length == 0) return;
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        // Twice the signed area, to find the direction of the points.
+        double area = 0;
+        double lastX = worldToPixelX(xPoints[xPoints.length-1]), lastY = worldToPixelY(yPoints[yPoints.length-1]);
         for (int i=0; i<xPoints.length; i++) {
-            pixelX[i] = worldToPixelX(xPoints[i]);
-            pixelY[i] = worldToPixelY(yPoints[i]);
+            double px = worldToPixelX(xPoints[i]), py = worldToPixelY(yPoints[i]);
+            minX = Math.min(minX, px);
+            maxX = Math.max(maxX, px);
+            minY = Math.min(minY, py);
+            maxY = Math.max(maxY, py);
+            area += lastX*py - px*lastY;
+            lastX = px;
+            lastY = py;
         }
-        context.setFill(toFxPaint(color));
-        context.fillPolygon(pixelX, pixelY, pixelX.length);
+        if (isOutsideCanvas(minX, minY, maxX, maxY)) return;
+        ColorBatch batch = batchForColor(color);
+        int n = batch.polygonCoordinateCount;
+        double[] polygons = batch.polygons = ColorBatch.ensureCapacity(batch.polygons, n + 1 + 2*xPoints.length);
+        polygons[n++] = xPoints.length;
+        // The batch is filled with the non-zero rule, so overlapping shapes wound in opposite
+        // directions would cancel out and leave holes. Add the points in the same direction as
+        // the circles from appendCircle, which have negative area in pixel coordinates.
+        boolean reverse = (area > 0);
+        for (int i=0; i<xPoints.length; i++) {
+            int index = reverse ? xPoints.length - 1 - i : i;
+            polygons[n++] = worldToPixelX(xPoints[index]);
+            polygons[n++] = worldToPixelY(yPoints[index]);
+        }
+        batch.polygonCoordinateCount = n;
+        drawIfTranslucent(batch);
+    }
+
+    /**
+     * Draws everything accumulated since the last flush, with one fill and one stroke per color,
+     * in the order colors were first used. Translucent colors have at most one call pending,
+     * since drawIfTranslucent flushes after each one.
+     */
+    void flushBatches() {
+        for (int i=0; i<frameBatches.size(); i++) {
+            ColorBatch batch = frameBatches.get(i);
+            if (batch.fillCircleCoordinateCount > 0 || batch.polygonCoordinateCount > 0) {
+                context.beginPath();
+                double[] circles = batch.fillCircles;
+                for (int j=0; j<batch.fillCircleCoordinateCount; j+=3) {
+                    appendCircle(circles[j], circles[j+1], circles[j+2]);
+                }
+                double[] polygons = batch.polygons;
+                int j = 0;
+                while (j < batch.polygonCoordinateCount) {
+                    int numPoints = (int) polygons[j++];
+                    context.moveTo(polygons[j], polygons[j+1]);
+                    for (int k=1; k<numPoints; k++) {
+                        context.lineTo(polygons[j+2*k], polygons[j+2*k+1]);
+                    }
+                    context.closePath();
+                    j += 2*numPoints;
+                }
+                context.setFill(batch.paint);
+                context.fill();
+            }
+            if (batch.lineCoordinateCount > 0 || batch.frameCircleCoordinateCount > 0) {
+                context.beginPath();
+                double[] lines = batch.lines;
+                for (int j=0; j<batch.lineCoordinateCount; j+=4) {
+                    context.moveTo(lines[j], lines[j+1]);
+                    context.lineTo(lines[j+2], lines[j+3]);
+                }
+                double[] circles = batch.frameCircles;
+                for (int j=0; j<batch.frameCircleCoordinateCount; j+=3) {
+                    appendCircle(circles[j], circles[j+1], circles[j+2]);
+                }
+                context.setStroke(batch.paint);
+                context.stroke();
+            }
+            batch.clear();
+        }
+        frameBatches.clear();
+    }
+
+    void appendCircle(double cx, double cy, double radius) {
+        context.moveTo(cx + radius, cy);
+        context.arc(cx, cy, radius, radius, 0, 360);
+        context.closePath();
     }
 
     @Override public void doDraw() {
@@ -128,26 +354,105 @@ public class FxCanvasRenderer implements IFieldRenderer {
             draw();
         }
         else {
-            Platform.runLater(this::draw);
+            requestedFrames.incrementAndGet();
+            drawPending.set(true);
         }
     }
 
+    /** Returns the number of redraws requested from threads other than the JavaFX thread. */
+    public long getRequestedFrameCount() {
+        return requestedFrames.get();
+    }
+
+    /**
+     * Returns the number of requested redraws that were merged into a later one because they
+     * arrived before the next pulse, or are still pending. Only call from the JavaFX thread.
+     */
+    public long getMergedFrameCount() {
+        return requestedFrames.get() - drawnFrames;
+    }
+
     void draw() {
-        context.setFill(javafx.scene.paint.Color.BLACK);
-        context.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        // The canvas is empty until the viewport has been laid out.
+        if (canvas.getWidth() < 1 || canvas.getHeight() < 1) return;
         if (editableField != null) {
+            clearCanvas();
             for (EditableFieldElement elem : editableField.getElements()) {
                 elem.drawForEditor(this, editableField.isElementSelected(elem));
             }
         }
         else if (field != null) {
-            synchronized(field) {
-                for (FieldElement elem : field.getFieldElements()) {
-                    elem.draw(this);
-                }
-                field.drawBalls(this);
+            // Drawn from the snapshot published after the last tick, so this never waits for the game thread.
+            RenderSnapshot snapshot = field.getLatestRenderSnapshot();
+            if (snapshot.getStaticLayer() != null) {
+                // The image may have more pixels than the canvas, so it's scaled to the canvas size.
+                context.drawImage(staticLayerImage(snapshot.getStaticLayer()),
+                        0, 0, canvas.getWidth(), canvas.getHeight());
+                snapshot.replayWithoutStaticLayer(this);
             }
+            else {
+                clearCanvas();
+                snapshot.replay(this);
+            }
+        }
+        else {
+            clearCanvas();
         }
+        flushBatches();
+    }
+
+    void clearCanvas() {
+        context.setFill(javafx.scene.paint.Color.BLACK);
+        context.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * Returns an image of the background and the static layer, drawing it if the layer, canvas,
+     * viewport, or zoom level has changed since it was last drawn. The image is taken at the
+     * window's render scale, so on HiDPI screens it has as many pixels as the visible canvas.
+     */
+    WritableImage staticLayerImage(RenderSnapshot staticLayer) {
+        int width = (int) canvas.getWidth();
+        int height = (int) canvas.getHeight();
+        double outputScaleX = 1;
+        double outputScaleY = 1;
+        Window window = (canvas.getScene() != null) ? canvas.getScene().getWindow() : null;
+        if (window != null) {
+            outputScaleX = window.getRenderScaleX();
+            outputScaleY = window.getRenderScaleY();
+        }
+        if (staticLayer == cachedStaticLayer && scale == cachedStaticLayerScale &&
+                viewportX == cachedStaticLayerViewportX && viewportY == cachedStaticLayerViewportY &&
+                outputScaleX == cachedStaticLayerOutputScaleX &&
+                outputScaleY == cachedStaticLayerOutputScaleY &&
+                staticLayerCanvas.getWidth() == width && staticLayerCanvas.getHeight() == height) {
+            return staticLayerImage;
+        }
+        if (staticLayerCanvas == null ||
+                staticLayerCanvas.getWidth() != width || staticLayerCanvas.getHeight() != height) {
+            staticLayerCanvas = new Canvas(width, height);
+            staticLayerImage = null;
+        }
+        // Draw with this renderer's methods into the offscreen canvas.
+        GraphicsContext canvasContext = context;
+        context = staticLayerCanvas.getGraphicsContext2D();
+        context.setFill(javafx.scene.paint.Color.BLACK);
+        context.fillRect(0, 0, width, height);
+        staticLayer.replay(this);
+        flushBatches();
+        context = canvasContext;
+
+        SnapshotParameters params = new SnapshotParameters();
+        params.setFill(javafx.scene.paint.Color.BLACK);
+        params.setTransform(Transform.scale(outputScaleX, outputScaleY));
+        staticLayerImage = staticLayerCanvas.snapshot(params, staticLayerImage);
+        cachedStaticLayer = staticLayer;
+        cachedStaticLayerScale = scale;
+        cachedStaticLayerViewportX = viewportX;
+        cachedStaticLayerViewportY = viewportY;
+        cachedStaticLayerOutputScaleX = outputScaleX;
+        cachedStaticLayerOutputScaleY = outputScaleY;
+        return staticLayerImage;
     }
 
     @Override public int getWidth() {
@@ -23,10 +23,12 @@ import com.dozingcatsoftware.vectorpinball.editor.elements.EditableFieldElement;
 import com.dozingcatsoftware.vectorpinball.model.Field;
 import com.dozingcatsoftware.vectorpinball.model.FieldDriver;
 import com.dozingcatsoftware.vectorpinball.model.GameMessage;
+import com.dozingcatsoftware.vectorpinball.model.InputQueue;
 import com.dozingcatsoftware.vectorpinball.util.JSONUtils;
 
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
@@ -50,6 +52,7 @@ import javafx.scene.layout.BackgroundFill;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.RowConstraints;
@@ -85,6 +88,9 @@ public class Main extends Application {
     Stage mainStage;
     VBox fieldBox;
     ScrollPane fieldScroller;
+    // Sized to the full zoomed table so the scroller shows the right scroll bars. The canvas is
+    // only as large as the visible viewport, and moves within this pane as it scrolls.
+    Pane fieldContent;
     Canvas fieldCanvas;
     ElementInspectorView inspectorView;
     ScoreView scoreView;
@@ -187,8 +193,14 @@ public class Main extends Application {
         fieldScroller = new ScrollPane();
         fieldScroller.setStyle("-fx-background: #222;");
         VBox.setVgrow(fieldScroller, Priority.ALWAYS);
+        fieldContent = new Pane();
+        fieldScroller.setContent(fieldContent);
+        fieldScroller.viewportBoundsProperty().addListener((obs, oldValue, newValue) -> updateCanvasViewport());
+        fieldScroller.hvalueProperty().addListener((obs, oldValue, newValue) -> updateCanvasViewport());
+        fieldScroller.vvalueProperty().addListener((obs, oldValue, newValue) -> updateCanvasViewport());
 
-        createCanvas(BASE_CANVAS_WIDTH, BASE_CANVAS_HEIGHT);
+        createCanvas();
+        updateContentSize();
 
         fieldBox.getChildren().addAll(fieldScroller);
 
@@ -312,11 +324,12 @@ public class Main extends Application {
         return mbar;
     }
 
-    void createCanvas(double width, double height) {
-        fieldCanvas = new Canvas(width, height);
+    void createCanvas() {
+        fieldCanvas = new Canvas();
         // Assign focus so that canvas will receive key events.
         fieldCanvas.addEventFilter(MouseEvent.ANY, (e) -> fieldCanvas.requestFocus());
-        fieldScroller.setContent(fieldCanvas);
+        fieldContent.getChildren().add(fieldCanvas);
+        renderer.setCanvas(fieldCanvas);
         fieldCanvas.setOnMousePressed(this::handleCanvasMousePressed);
         fieldCanvas.setOnMouseReleased(this::handleCanvasMouseReleased);
         fieldCanvas.setOnMouseDragged(this::handleCanvasMouseDragged);
@@ -326,23 +339,43 @@ public class Main extends Application {
 
     void zoomIn() {
         renderer.zoomIn();
-        recreateCanvasAfterZoom();
+        updateContentSize();
     }
 
     void zoomOut() {
         renderer.zoomOut();
-        recreateCanvasAfterZoom();
+        updateContentSize();
     }
 
     void zoomDefault() {
         renderer.zoomDefault();
-        recreateCanvasAfterZoom();
-    }
-
-    private void recreateCanvasAfterZoom() {
-        createCanvas(BASE_CANVAS_WIDTH * renderer.getRelativeScale(),
-                BASE_CANVAS_HEIGHT * renderer.getRelativeScale());
-        renderer.setCanvas(fieldCanvas);
+        updateContentSize();
+    }
+
+    /** Sizes the scroller's content to the zoomed table, keeping the relative scroll position. */
+    private void updateContentSize() {
+        double width = BASE_CANVAS_WIDTH * renderer.getRelativeScale();
+        double height = BASE_CANVAS_HEIGHT * renderer.getRelativeScale();
+        fieldContent.setMinSize(width, height);
+        fieldContent.setPrefSize(width, height);
+        fieldContent.setMaxSize(width, height);
+        fieldScroller.layout();
+        updateCanvasViewport();
+    }
+
+    /** Moves and resizes the canvas to cover the visible part of the table, and redraws. */
+    void updateCanvasViewport() {
+        Bounds viewport = fieldScroller.getViewportBounds();
+        double contentWidth = fieldContent.getPrefWidth();
+        double contentHeight = fieldContent.getPrefHeight();
+        double width = Math.min(viewport.getWidth(), contentWidth);
+        double height = Math.min(viewport.getHeight(), contentHeight);
+        double x = (contentWidth - width) * fieldScroller.getHvalue();
+        double y = (contentHeight - height) * fieldScroller.getVvalue();
+        fieldCanvas.setWidth(width);
+        fieldCanvas.setHeight(height);
+        fieldCanvas.relocate(x, y);
+        renderer.setViewport(x, y, contentHeight);
         renderer.doDraw();
     }
 
@@ -383,9 +416,19 @@ public class Main extends Application {
     }
 
     void startGame() {
-        if (fieldDriver==null) {
+        // The field is kept when the game is stopped, so if the table hasn't been edited since the
+        // last game its world and elements are reused rather than built again.
+        if (field == null) {
             field = new Field();
-            field.resetForLevel(editableField.getPropertyMapSnapshot());
+        }
+        // The game thread may be running, so restarting must happen between ticks.
+        synchronized (field) {
+            field.restartLevel(editableField.getPropertyMapSnapshot());
+            field.startGame();
+            field.removeDeadBalls();
+            field.launchBall();
+        }
+        if (fieldDriver == null) {
             renderer.setField(field);
 
             fieldDriver = new FieldDriver();
@@ -394,12 +437,6 @@ public class Main extends Application {
             fieldDriver.start();
             showScoreView();
         }
-        else {
-            field.resetForLevel(editableField.getPropertyMapSnapshot());
-        }
-        field.startGame();
-        field.removeDeadBalls();
-        field.launchBall();
         editorState = EditorState.SAMPLE_GAME;
         fieldCanvas.requestFocus();
 
@@ -412,6 +449,8 @@ public class Main extends Application {
         }
         fieldDriver = null;
 
+        // The field and its Box2D world are kept for the next startGame; if the table has changed
+        // by then, Field.restartLevel releases the world and builds a new one.
         renderer.setEditableField(editableField);
         renderer.doDraw();
         editorState = EditorState.EDITING;
@@ -421,8 +460,9 @@ public class Main extends Application {
     void handleCanvasMousePressed(MouseEvent event) {
         switch (editorState) {
             case SAMPLE_GAME:
+                // Input is queued and applied between ticks on the game thread.
                 launchBallIfNeeded();
-                field.setAllFlippersEngaged(true);
+                field.queueInput(InputQueue.ALL_FLIPPERS_ENGAGED);
                 break;
             case EDITING:
                 renderer.handleEditorMouseDown(event);
@@ -433,7 +473,7 @@ public class Main extends Application {
     void handleCanvasMouseReleased(MouseEvent event) {
         switch (editorState) {
             case SAMPLE_GAME:
-                field.setAllFlippersEngaged(false);
+                field.queueInput(InputQueue.ALL_FLIPPERS_RELEASED);
                 break;
             case EDITING:
                 renderer.handleEditorMouseUp(event);
@@ -485,15 +525,15 @@ public class Main extends Application {
 
     private boolean updateFlippersFromKey(KeyCode code, boolean pressed) {
         if (LEFT_FLIPPER_KEYS.contains(code)) {
-            field.setLeftFlippersEngaged(pressed);
+            field.queueInput(pressed ? InputQueue.LEFT_FLIPPERS_ENGAGED : InputQueue.LEFT_FLIPPERS_RELEASED);
             return true;
         }
         else if (RIGHT_FLIPPER_KEYS.contains(code)) {
-            field.setRightFlippersEngaged(pressed);
+            field.queueInput(pressed ? InputQueue.RIGHT_FLIPPERS_ENGAGED : InputQueue.RIGHT_FLIPPERS_RELEASED);
             return true;
         }
         else if (ALL_FLIPPER_KEYS.contains(code)) {
-            field.setAllFlippersEngaged(pressed);
+            field.queueInput(pressed ? InputQueue.ALL_FLIPPERS_ENGAGED : InputQueue.ALL_FLIPPERS_RELEASED);
             return true;
         }
         return false;
@@ -503,8 +543,10 @@ public class Main extends Application {
         if (!field.getGameState().isGameInProgress()) {
             startGame();
         }
-        field.removeDeadBalls();
-        if (field.getBalls().isEmpty()) field.launchBall();
+        else {
+            field.queueInput(InputQueue.REMOVE_DEAD_BALLS);
+            field.queueInput(InputQueue.LAUNCH_BALL_IF_NONE);
+        }
     }
 
     void handleSelectionChange() {
@@ -518,6 +560,21 @@ public class Main extends Application {
     void handleElementChangeFromInspector() {
         renderer.doDraw();
         undoStack.pushSnapshot();
+        applyEditsToGame();
+    }
+
+    /**
+     * Applies edits made while a sample game is running to its field, so that changes such as a
+     * bumper's kick take effect without restarting the game and losing the ball. Edits that can't
+     * be applied to a running game, like script changes, take effect with the next startGame.
+     */
+    void applyEditsToGame() {
+        if (fieldDriver == null) return;
+        Map<String, Object> layoutMap = editableField.getPropertyMapSnapshot();
+        // Bodies can only be created and destroyed between ticks.
+        synchronized (field) {
+            field.applyLayoutChanges(layoutMap);
+        }
     }
 
     void handleScriptChange() {
@@ -540,6 +597,7 @@ public class Main extends Application {
             undoStack.undo();
             renderer.doDraw();
             inspectorView.updateInspectorValues();
+            applyEditsToGame();
         }
     }
 
@@ -548,6 +606,7 @@ public class Main extends Application {
             undoStack.redo();
             renderer.doDraw();
             inspectorView.updateInspectorValues();
+            applyEditsToGame();
         }
     }
 
@@ -1,8 +1,12 @@
 package com.dozingcatsoftware.vectorpinball.elements;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.ChainShape;
 import com.badlogic.gdx.physics.box2d.CircleShape;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
@@ -14,6 +18,9 @@ import com.badlogic.gdx.physics.box2d.World;
 
 public class Box2DFactory {
 
+	// Box2D requires chain vertices to be farther apart than its linear slop (0.005), so closer points are merged.
+	static final float MIN_CHAIN_VERTEX_DISTANCE = 0.01f;
+
 	/** Creates a circle object with the given position and radius. Resitution defaults to 0.6.
 	 */
 	public static Body createCircle(World world, float x, float y, float radius, boolean isStatic) {
@@ -32,6 +39,8 @@ public class Box2DFactory {
 		bd.position.set(x, y);
 		Body body = world.createBody(bd);
 		body.createFixture(fdef);
+		// The fixture has its own copy of the shape, so the native shape can be freed.
+		sd.dispose();
 		if (isStatic) {
 			body.setType(BodyDef.BodyType.StaticBody);
 		}
@@ -70,11 +79,85 @@ public class Box2DFactory {
     	bd.position.set(cx, cy);
     	Body wall = world.createBody(bd);
     	wall.createFixture(fdef);
+    	wallshape.dispose();
     	wall.setType(BodyDef.BodyType.StaticBody);
         wall.setTransform(cx, cy, angle);
     	return wall;
     }
 
+    /** Creates walls along a series of line segments, each an array of {x1, y1, x2, y2}. Consecutive segments that
+     * share an endpoint are joined into one chain shape, so balls roll smoothly across the joints instead of catching
+     * on the corners of separate boxes, and a path ending where it starts becomes a loop. All chains are fixtures of a
+     * single static body, which is returned in a list. Returns an empty list if the segments have no length.
+     * If useChainShapes is false, instead creates a thin wall body for each segment as older versions did.
+     */
+    public static List<Body> createWallPath(World world, float[][] segments, float restitution,
+    		boolean useChainShapes) {
+    	List<Body> bodies = new ArrayList<Body>();
+    	if (!useChainShapes) {
+    		for (float[] segment : segments) {
+    			bodies.add(createThinWall(world, segment[0], segment[1], segment[2], segment[3], restitution));
+    		}
+    		return bodies;
+    	}
+    	Body body = null;
+    	// Coordinates of the current chain, as x and y pairs.
+    	float[] vertices = new float[2 * (segments.length + 1)];
+    	int count = 0;
+    	for (int i=0; i<segments.length; i++) {
+    		float[] segment = segments[i];
+    		if (count > 0 && !isNear(vertices, count - 1, segment[0], segment[1])) {
+    			body = addChainFixture(world, body, vertices, count, restitution);
+    			count = 0;
+    		}
+    		if (count == 0) {
+    			vertices[0] = segment[0];
+    			vertices[1] = segment[1];
+    			count = 1;
+    		}
+    		if (!isNear(vertices, count - 1, segment[2], segment[3])) {
+    			vertices[2*count] = segment[2];
+    			vertices[2*count + 1] = segment[3];
+    			count++;
+    		}
+    	}
+    	body = addChainFixture(world, body, vertices, count, restitution);
+    	if (body != null) bodies.add(body);
+    	return bodies;
+    }
+
+    static boolean isNear(float[] vertices, int index, float x, float y) {
+    	float dx = vertices[2*index] - x;
+    	float dy = vertices[2*index + 1] - y;
+    	return dx*dx + dy*dy <= MIN_CHAIN_VERTEX_DISTANCE * MIN_CHAIN_VERTEX_DISTANCE;
+    }
+
+    /** Adds a chain through the first count vertices to body, creating the body if it's null, and returns the body.
+     * Does nothing if there are fewer than two vertices.
+     */
+    static Body addChainFixture(World world, Body body, float[] vertices, int count, float restitution) {
+    	if (count < 2) return body;
+    	if (body == null) {
+    		BodyDef bd = new BodyDef();
+    		bd.type = BodyDef.BodyType.StaticBody;
+    		body = world.createBody(bd);
+    	}
+    	ChainShape chain = new ChainShape();
+    	if (count > 3 && isNear(vertices, 0, vertices[2*(count-1)], vertices[2*(count-1) + 1])) {
+    		chain.createLoop(vertices, 0, 2*(count-1));
+    	}
+    	else {
+    		chain.createChain(vertices, 0, 2*count);
+    	}
+    	FixtureDef fdef = new FixtureDef();
+    	fdef.shape = chain;
+    	fdef.density = 1.0f;
+    	if (restitution>0) fdef.restitution = restitution;
+    	body.createFixture(fdef);
+    	chain.dispose();
+    	return body;
+    }
+
     /** Creates a segment-like thin wall with 0.05 thickness going from (x1,y1) to (x2,y2) */
     public static Body createThinWall(World world, float x1, float y1, float x2, float y2, float restitution) {
     	// determine center point and rotation angle for createWall
@@ -1,7 +1,5 @@
 package com.dozingcatsoftware.vectorpinball.elements;
 
-import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
-
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +23,11 @@ public class BumperElement extends FieldElement {
     public static final String RADIUS_PROPERTY = "radius";
     public static final String KICK_PROPERTY = "kick";
 
+    static final ParameterSchema SCHEMA = new ParameterSchema();
+    static final int POSITION_PARAM = SCHEMA.addFloatArray(POSITION_PROPERTY);
+    static final int RADIUS_PARAM = SCHEMA.addFloat(RADIUS_PROPERTY);
+    static final int KICK_PARAM = SCHEMA.addFloat(KICK_PROPERTY);
+
     static final Color DEFAULT_COLOR = Color.fromRGB(0, 0, 255);
 
     Body bumperBody;
@@ -34,12 +37,16 @@ public class BumperElement extends FieldElement {
     float cx, cy;
     float kick;
 
+    @Override protected ParameterSchema getParameterSchema() {
+        return SCHEMA;
+    }
+
     @Override public void finishCreateElement(Map<String, ?> params, FieldElementCollection collection) {
-        List<?> pos = (List<?>)params.get(POSITION_PROPERTY);
-        this.radius = asFloat(params.get(RADIUS_PROPERTY));
-        this.cx = asFloat(pos.get(0));
-        this.cy = asFloat(pos.get(1));
-        this.kick = asFloat(params.get(KICK_PROPERTY));
+        float[] pos = parameterValues.getFloatArray(POSITION_PARAM);
+        this.radius = parameterValues.getFloat(RADIUS_PARAM);
+        this.cx = pos[0];
+        this.cy = pos[1];
+        this.kick = parameterValues.getFloat(KICK_PARAM);
     }
 
     @Override public void createBodies(World world) {
@@ -51,12 +58,24 @@ public class BumperElement extends FieldElement {
         return bumperBodySet;
     }
 
+    @Override public void destroyBodies(World world) {
+        super.destroyBodies(world);
+        bumperBody = null;
+        bumperBodySet = Collections.emptyList();
+    }
+
     @Override public boolean shouldCallTick() {
         // Needs to call tick to decrement flash counter, but can use superclass tick() implementation.
         return true;
     }
 
 
+    Vector2 impulse = new Vector2(); // reused by impulseForBall to avoid allocation
+
+    /**
+     * Returns the impulse to apply to a ball that hit the bumper, or null if the bumper has no
+     * kick. The returned vector is reused by subsequent calls.
+     */
     Vector2 impulseForBall(Ball ball) {
         if (this.kick <= 0.01f) return null;
         // Compute unit vector from center of bumper to ball, and scale by kick value to get impulse.
@@ -66,7 +85,7 @@ public class BumperElement extends FieldElement {
         float iy = ballpos.y - thisPos.y;
         float mag = (float)Math.hypot(ix, iy);
         float scale = this.kick / mag;
-        return new Vector2(ix*scale, iy*scale);
+        return impulse.set(ix*scale, iy*scale);
     }
 
     @Override public void handleCollision(Ball ball, Body bodyHit, Field field) {
@@ -1,7 +1,6 @@
 package com.dozingcatsoftware.vectorpinball.elements;
 
 import static com.dozingcatsoftware.vectorpinball.util.MathUtils.TAU;
-import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -59,32 +58,56 @@ public class DropTargetGroupElement extends FieldElement {
     public static final String RESET_DELAY_PROPERTY = "reset";
     public static final String NUM_TARGETS_PROPERTY = "numTargets";
 
+    static final ParameterSchema SCHEMA = new ParameterSchema();
+    static final int POSITIONS_PARAM = SCHEMA.addFloatArrayList(POSITIONS_PROPERTY);
+    static final int WALL_START_PARAM = SCHEMA.addFloatArray(WALL_START_PROPERTY);
+    static final int WALL_END_PARAM = SCHEMA.addFloatArray(WALL_END_PROPERTY);
+    static final int GAP_FROM_WALL_PARAM = SCHEMA.addFloat(GAP_FROM_WALL_PROPERTY);
+    static final int START_DISTANCE_ALONG_WALL_PARAM = SCHEMA.addFloat(START_DISTANCE_ALONG_WALL_PROPERTY);
+    static final int TARGET_WIDTH_PARAM = SCHEMA.addFloat(TARGET_WIDTH_PROPERTY);
+    static final int GAP_BETWEEN_TARGETS_PARAM = SCHEMA.addFloat(GAP_BETWEEN_TARGETS_PROPERTY);
+    static final int RESET_DELAY_PARAM = SCHEMA.addFloat(RESET_DELAY_PROPERTY);
+    static final int NUM_TARGETS_PARAM = SCHEMA.addInt(NUM_TARGETS_PROPERTY, 0);
+
     static final Color DEFAULT_COLOR = Color.fromRGB(0, 255, 0);
 
     // store all bodies and positions, use Body's active flag to determine which targets have been hit
     List<Body> allBodies = new ArrayList<Body>();
     float[][] positions;
+    float resetDelay;
+
+    // Scheduled when all targets are hit and the reset parameter is set; created once to avoid
+    // allocating on every hit.
+    final Runnable makeAllTargetsVisibleAction = new Runnable() {
+        @Override
+        public void run() {
+            makeAllTargetsVisible();
+        }
+    };
+
+    @Override protected ParameterSchema getParameterSchema() {
+        return SCHEMA;
+    }
 
     @Override public void finishCreateElement(Map<String, ?> params, FieldElementCollection collection) {
+        this.resetDelay = parameterValues.getFloat(RESET_DELAY_PARAM);
         // Individual targets can be specified in "positions" list.
-        @SuppressWarnings("unchecked")
-        List<List<?>> positionList = (List<List<?>>) getRawParameterValueForKey(POSITIONS_PROPERTY);
-        if (positionList!=null && !positionList.isEmpty()) {
-            positions = new float[positionList.size()][];
-            for (int i = 0; i < positionList.size(); i++) {
-                List<?> coords = positionList.get(i);
-                positions[i] = new float[] {asFloat(coords.get(0)), asFloat(coords.get(1)),
-                        asFloat(coords.get(2)), asFloat(coords.get(3))};
+        float[][] positionList = parameterValues.getFloatArrayList(POSITIONS_PARAM);
+        if (positionList!=null && positionList.length > 0) {
+            positions = new float[positionList.length][];
+            for (int i = 0; i < positionList.length; i++) {
+                float[] coords = positionList[i];
+                positions[i] = new float[] {coords[0], coords[1], coords[2], coords[3]};
             }
         }
         else {
-            float[] wallStart = getFloatArrayParameterValueForKey(WALL_START_PROPERTY);
-            float[] wallEnd = getFloatArrayParameterValueForKey(WALL_END_PROPERTY);
-            float gapFromWall = getFloatParameterValueForKey(GAP_FROM_WALL_PROPERTY);
-            float startDistanceAlongWall = getFloatParameterValueForKey(START_DISTANCE_ALONG_WALL_PROPERTY);
-            float targetWidth = getFloatParameterValueForKey(TARGET_WIDTH_PROPERTY);
-            float gapBetweenTargets = getFloatParameterValueForKey(GAP_BETWEEN_TARGETS_PROPERTY);
-            int numTargets = getIntParameterValueForKey(NUM_TARGETS_PROPERTY);
+            float[] wallStart = parameterValues.getFloatArray(WALL_START_PARAM);
+            float[] wallEnd = parameterValues.getFloatArray(WALL_END_PARAM);
+            float gapFromWall = parameterValues.getFloat(GAP_FROM_WALL_PARAM);
+            float startDistanceAlongWall = parameterValues.getFloat(START_DISTANCE_ALONG_WALL_PARAM);
+            float targetWidth = parameterValues.getFloat(TARGET_WIDTH_PARAM);
+            float gapBetweenTargets = parameterValues.getFloat(GAP_BETWEEN_TARGETS_PARAM);
+            int numTargets = parameterValues.getInt(NUM_TARGETS_PARAM);
 
             positions = new float[numTargets][];
             double wallAngle = Math.atan2(wallEnd[1] - wallStart[1], wallEnd[0] - wallStart[0]);
@@ -118,6 +141,12 @@ public class DropTargetGroupElement extends FieldElement {
         return allBodies;
     }
 
+    @Override public void destroyBodies(World world) {
+        super.destroyBodies(world);
+        // A pending makeAllTargetsVisibleAction then has nothing to restore.
+        allBodies.clear();
+    }
+
     /** Returns true if all targets have been hit (and their corresponding bodies made inactive) */
     public boolean allTargetsHit() {
         int bsize = allBodies.size();
@@ -133,14 +162,8 @@ public class DropTargetGroupElement extends FieldElement {
         if (allTargetsHit()) {
             field.getDelegate().allDropTargetsInGroupHit(field, this);
 
-            float restoreTime = asFloat(this.parameters.get(RESET_DELAY_PROPERTY));
-            if (restoreTime>0) {
-                field.scheduleAction((long)(restoreTime*1000), new Runnable() {
-                    @Override
-                    public void run() {
-                        makeAllTargetsVisible();
-                    }
-                });
+            if (resetDelay>0) {
+                field.scheduleAction((long)(resetDelay*1000), makeAllTargetsVisibleAction);
             }
         }
     }
@@ -24,6 +24,8 @@ public abstract class FieldElement {
     public static final String COLOR_PROPERTY = "color";
 
     Map<String, ?> parameters;
+    // The parameters declared by getParameterSchema, compiled when the element is created.
+    ParameterSchema.Values parameterValues;
     World box2dWorld;
     String elementID;
     Color initialColor;
@@ -31,6 +33,8 @@ public abstract class FieldElement {
 
     int flashCounter=0; // Inverts colors when >0, decrements in tick().
     long score = 0;
+    // Incremented when the drawing of an element that isDrawnStatically changes.
+    int staticDrawVersion = 0;
 
     // Default wall color shared by WallElement, WallArcElement, WallPathElement.
     static final Color DEFAULT_WALL_COLOR = Color.fromRGB(64, 64, 160);
@@ -105,13 +109,23 @@ public abstract class FieldElement {
         }
 
         if (params.containsKey(SCORE_PROPERTY)) {
-            this.score = ((Number)params.get(SCORE_PROPERTY)).longValue();
+            this.score = (long) ParameterSchema.toNumber(params.get(SCORE_PROPERTY), collection);
         }
 
+        this.parameterValues = getParameterSchema().compile(params, collection);
         this.finishCreateElement(params, collection);
         this.createBodies(world);
     }
 
+    /**
+     * Returns the schema of the parameters that the element reads, which initialize compiles into
+     * parameterValues before calling finishCreateElement. Subclasses should declare their schema
+     * in a static field and override this to return it. Default returns ParameterSchema.EMPTY.
+     */
+    protected ParameterSchema getParameterSchema() {
+        return ParameterSchema.EMPTY;
+    }
+
     /**
      * Called after creation to determine if tick() needs to be called after every frame is
      * simulated. Default returns false, subclasses must override to return true in order for
@@ -142,6 +156,20 @@ public abstract class FieldElement {
      */
     public void flashForFrames(int frames) {
         flashCounter = frames;
+        staticDrawingChanged();
+    }
+
+    /**
+     * Called by Field.restartLevel to return the element to the state it had when it was created,
+     * so that it can be reused for a new game instead of being recreated. Field has already
+     * restored the positions, velocities, and active flags of the element's bodies. The default
+     * implementation resets the color; subclasses with other state that can change during a game
+     * must override, and should call super.resetForNewGame().
+     */
+    public void resetForNewGame() {
+        flashCounter = 0;
+        newColor = null;
+        staticDrawingChanged();
     }
 
     /**
@@ -164,11 +192,46 @@ public abstract class FieldElement {
      */
     public abstract List<Body> getBodies();
 
+    /**
+     * Called by Field when the element is removed from a running field, to destroy its Box2D
+     * bodies. Scheduled actions and delegates may still refer to the element afterward, and
+     * Box2D reuses the Body objects of destroyed bodies, so the element must not use them again.
+     * The default implementation destroys the bodies returned by getBodies; subclasses with other
+     * bodies must override to destroy them too, and should clear any references they keep.
+     */
+    public void destroyBodies(World world) {
+        for (Body body : getBodies()) {
+            world.destroyBody(body);
+        }
+    }
+
     /**
      * Must be overridden by subclasses to draw the element, using IFieldRenderer methods.
      */
     public abstract void draw(IFieldRenderer renderer);
 
+    /**
+     * Returns true if the element's drawing only changes when staticDrawingChanged is called, so
+     * renderers can draw it once into a cached layer rather than on every frame. Default returns
+     * false; subclasses like walls that don't move or change on their own override.
+     */
+    public boolean isDrawnStatically() {
+        return false;
+    }
+
+    /**
+     * Called when anything that affects how the element is drawn changes, for example its color
+     * or visibility. Causes renderers to redraw the cached layer if isDrawnStatically is true.
+     */
+    protected void staticDrawingChanged() {
+        staticDrawVersion++;
+    }
+
+    /** Returns a number that changes whenever staticDrawingChanged is called. */
+    public int getStaticDrawVersion() {
+        return staticDrawVersion;
+    }
+
     /**
      * Called when a ball collides with a Body in this element. The default implementation does
      * nothing (allowing objects to bounce off each other normally). Subclasses can override to
@@ -194,25 +257,66 @@ public abstract class FieldElement {
         return parameters.get(key);
     }
 
+    // The get*ParameterValueForKey methods return the compiled values of parameters in the
+    // element's schema, with any expressions already evaluated. Other parameters are converted
+    // from the raw map on each call, and can't be expressions.
+
+    // Schema keys passed to the get*ParameterValueForKey methods and their indexes, so that
+    // scripts calling them on every tick only look up each key in the schema once.
+    String[] resolvedKeys;
+    int[] resolvedIndexes;
+    int resolvedCount;
+
+    /** Returns the schema index of the parameter with the given key, or -1 if it's not in it. */
+    int parameterIndex(String key) {
+        for (int i = 0; i < resolvedCount; i++) {
+            if (resolvedKeys[i].equals(key)) return resolvedIndexes[i];
+        }
+        ParameterSchema schema = parameterValues.getSchema();
+        int index = schema.indexOf(key);
+        if (index >= 0) {
+            // Only keys in the schema are kept, so the arrays can't fill up.
+            if (resolvedKeys == null) {
+                resolvedKeys = new String[schema.size()];
+                resolvedIndexes = new int[schema.size()];
+            }
+            resolvedKeys[resolvedCount] = key;
+            resolvedIndexes[resolvedCount] = index;
+            resolvedCount++;
+        }
+        return index;
+    }
+
     public float getFloatParameterValueForKey(String key) {
-        // TODO: parse function/math expressions.
+        int index = parameterIndex(key);
+        if (index >= 0) return parameterValues.getFloat(index);
         return asFloat(parameters.get(key));
     }
 
     public int getIntParameterValueForKey(String key) {
-        // TODO: parse function/math expressions.
+        int index = parameterIndex(key);
+        if (index >= 0) return parameterValues.getInt(index);
         Number num = (Number) parameters.get(key);
         return num.intValue();
     }
 
     public long getLongParameterValueForKey(String key) {
-        // TODO: parse function/math expressions.
+        int index = parameterIndex(key);
+        if (index >= 0) return parameterValues.getLong(index);
         Number num = (Number) parameters.get(key);
         return num.longValue();
     }
 
+    /**
+     * Returns a new array with the values of a list parameter. Elements keep using their compiled
+     * arrays, for example when resetting for a new game, so those are never handed out.
+     */
     public float[] getFloatArrayParameterValueForKey(String key) {
-        // TODO: parse function/math expressions.
+        int index = parameterIndex(key);
+        if (index >= 0) {
+            float[] values = parameterValues.getFloatArray(index);
+            return (values != null) ? values.clone() : null;
+        }
         List<?> list = (List<?>) parameters.get(key);
         float[] result = new float[list.size()];
         for (int i = 0; i < list.size(); i++) {
@@ -222,6 +326,8 @@ public abstract class FieldElement {
     }
 
     public boolean getBooleanParameterValueForKey(String key) {
+        int index = parameterIndex(key);
+        if (index >= 0) return parameterValues.getBoolean(index);
         Object value = parameters.get(key);
         return (Boolean.TRUE.equals(value) ||
                 ((value instanceof Number) && ((Number) value).doubleValue() != 0));
@@ -238,6 +344,7 @@ public abstract class FieldElement {
 
     public void setNewColor(Color value) {
         this.newColor = value;
+        staticDrawingChanged();
     }
 
     /**
@@ -17,6 +17,10 @@ public class FieldElementCollection {
 
     Map<String, Object> variables = new HashMap<String, Object>();
 
+    // Whether wall paths and arcs created with this collection use chain shapes; see
+    // Box2DFactory.createWallPath.
+    boolean chainShapeWalls = true;
+
     public void addElement(FieldElement element) {
         allElements.add(element);
         if (element.getElementId() != null) {
@@ -63,4 +67,12 @@ public class FieldElementCollection {
     public Object getVariableOrDefault(String key, Object defaultValue) {
         return (variables.containsKey(key)) ? variables.get(key) : defaultValue;
     }
+
+    public boolean usesChainShapeWalls() {
+        return chainShapeWalls;
+    }
+
+    public void setChainShapeWalls(boolean value) {
+        chainShapeWalls = value;
+    }
 }
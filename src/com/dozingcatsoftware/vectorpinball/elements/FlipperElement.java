@@ -1,6 +1,5 @@
 package com.dozingcatsoftware.vectorpinball.elements;
 
-import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
 import static com.dozingcatsoftware.vectorpinball.util.MathUtils.toRadians;
 
 import java.util.Collections;
@@ -41,6 +40,14 @@ public class FlipperElement extends FieldElement {
     public static final String UP_SPEED_PROPERTY = "upspeed";
     public static final String DOWN_SPEED_PROPERTY = "downspeed";
 
+    static final ParameterSchema SCHEMA = new ParameterSchema();
+    static final int POSITION_PARAM = SCHEMA.addFloatArray(POSITION_PROPERTY);
+    static final int LENGTH_PARAM = SCHEMA.addFloat(LENGTH_PROPERTY);
+    static final int MIN_ANGLE_PARAM = SCHEMA.addFloat(MIN_ANGLE_PROPERTY);
+    static final int MAX_ANGLE_PARAM = SCHEMA.addFloat(MAX_ANGLE_PROPERTY);
+    static final int UP_SPEED_PARAM = SCHEMA.addFloat(UP_SPEED_PROPERTY);
+    static final int DOWN_SPEED_PARAM = SCHEMA.addFloat(DOWN_SPEED_PROPERTY);
+
     static final Color DEFAULT_COLOR = Color.fromRGB(0, 255, 0);
 
     Body flipperBody;
@@ -54,17 +61,20 @@ public class FlipperElement extends FieldElement {
     float minangle, maxangle;
     float cx, cy;
 
+    @Override protected ParameterSchema getParameterSchema() {
+        return SCHEMA;
+    }
+
     @Override public void finishCreateElement(Map<String, ?> params, FieldElementCollection collection) {
-        @SuppressWarnings("unchecked")
-        List<Object> pos = (List<Object>)params.get(POSITION_PROPERTY);
+        float[] pos = parameterValues.getFloatArray(POSITION_PARAM);
 
-        this.cx = asFloat(pos.get(0));
-        this.cy = asFloat(pos.get(1));
-        this.flipperLength = asFloat(params.get(LENGTH_PROPERTY));
-        this.minangle = toRadians(asFloat(params.get(MIN_ANGLE_PROPERTY)));
-        this.maxangle = toRadians(asFloat(params.get(MAX_ANGLE_PROPERTY)));
-        this.upspeed = asFloat(params.get(UP_SPEED_PROPERTY));
-        this.downspeed = asFloat(params.get(DOWN_SPEED_PROPERTY));
+        this.cx = pos[0];
+        this.cy = pos[1];
+        this.flipperLength = parameterValues.getFloat(LENGTH_PARAM);
+        this.minangle = toRadians(parameterValues.getFloat(MIN_ANGLE_PARAM));
+        this.maxangle = toRadians(parameterValues.getFloat(MAX_ANGLE_PARAM));
+        this.upspeed = parameterValues.getFloat(UP_SPEED_PARAM);
+        this.downspeed = parameterValues.getFloat(DOWN_SPEED_PARAM);
     }
 
     @Override public void createBodies(World world) {
@@ -93,6 +103,15 @@ public class FlipperElement extends FieldElement {
         this.setEffectiveMotorSpeed(-this.downspeed); // Force flipper to bottom when field is first created.
     }
 
+    @Override public void resetForNewGame() {
+        super.resetForNewGame();
+        // Replaces the joint rather than keeping its accumulated impulses, so that the flipper
+        // moves exactly as it would in a newly created world.
+        box2dWorld.destroyJoint(joint);
+        this.joint = (RevoluteJoint)box2dWorld.createJoint(jointDef);
+        setEffectiveMotorSpeed(-this.downspeed);
+    }
+
     /** Returns true if the flipper rotates around its right end. */
     boolean isReversed() {
         return (flipperLength<0);
@@ -127,6 +146,13 @@ public class FlipperElement extends FieldElement {
         return flipperBodySet;
     }
 
+    @Override public void destroyBodies(World world) {
+        // Destroying the flipper body also destroys the joint.
+        super.destroyBodies(world);
+        world.destroyBody(anchorBody);
+        flipperBodySet = Collections.emptyList();
+    }
+
     @Override
     public boolean shouldCallTick() {
         return true;
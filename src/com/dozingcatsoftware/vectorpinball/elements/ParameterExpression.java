@@ -0,0 +1,191 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+/**
+ * Evaluates arithmetic expressions in element parameters, such as "LaneWidth / 2 + 0.5" or
+ * "min(RampHeight, 12) * cos(pi / 8)". Names refer to the layout's variables, which are numbers
+ * that can't change after the layout is loaded, so ParameterSchema evaluates each expression
+ * once when an element is created and stores only the result. Supports numbers, parentheses,
+ * unary minus, the + - * / % and ^ operators with the usual precedence (^ is right associative),
+ * the constant pi, and the functions in callFunction. Angles for trigonometric functions are in
+ * radians. Throws IllegalArgumentException for syntax errors, unknown functions, and variables
+ * that aren't set or aren't numbers.
+ */
+public class ParameterExpression {
+
+    final String text;
+    final FieldElementCollection variables;
+    int pos = 0;
+
+    ParameterExpression(String text, FieldElementCollection variables) {
+        this.text = text;
+        this.variables = variables;
+    }
+
+    /**
+     * Returns the value of the expression, with names resolved from the variables of the given
+     * collection, which can be null if the expression doesn't use variables.
+     */
+    public static double evaluate(String text, FieldElementCollection variables) {
+        ParameterExpression expression = new ParameterExpression(text, variables);
+        double value = expression.parseSum();
+        expression.skipSpaces();
+        if (expression.pos < text.length()) {
+            throw expression.error("Unexpected character");
+        }
+        return value;
+    }
+
+    IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos + " in expression: " + text);
+    }
+
+    void skipSpaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+    }
+
+    /** Skips whitespace, and then the given character if it's next. Returns whether it was. */
+    boolean consume(char ch) {
+        skipSpaces();
+        if (pos < text.length() && text.charAt(pos) == ch) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    double parseSum() {
+        double value = parseProduct();
+        while (true) {
+            if (consume('+')) value += parseProduct();
+            else if (consume('-')) value -= parseProduct();
+            else return value;
+        }
+    }
+
+    double parseProduct() {
+        double value = parseUnary();
+        while (true) {
+            if (consume('*')) value *= parseUnary();
+            else if (consume('/')) value /= parseUnary();
+            else if (consume('%')) value %= parseUnary();
+            else return value;
+        }
+    }
+
+    double parseUnary() {
+        if (consume('-')) return -parseUnary();
+        if (consume('+')) return parseUnary();
+        return parsePower();
+    }
+
+    double parsePower() {
+        double base = parsePrimary();
+        // Exponents bind tighter than unary minus on the left, so -2^2 is -4.
+        return consume('^') ? Math.pow(base, parseUnary()) : base;
+    }
+
+    double parsePrimary() {
+        skipSpaces();
+        if (pos >= text.length()) {
+            throw error("Unexpected end");
+        }
+        char ch = text.charAt(pos);
+        if (ch == '(') {
+            pos++;
+            double value = parseSum();
+            if (!consume(')')) throw error("Expected )");
+            return value;
+        }
+        if (Character.isDigit(ch) || ch == '.') {
+            return parseNumber();
+        }
+        if (Character.isLetter(ch) || ch == '_') {
+            int start = pos;
+            while (pos < text.length() &&
+                    (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_')) {
+                pos++;
+            }
+            String name = text.substring(start, pos);
+            if (consume('(')) {
+                return parseFunctionCall(name);
+            }
+            return variableValue(name);
+        }
+        throw error("Unexpected character");
+    }
+
+    double parseNumber() {
+        int start = pos;
+        while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+            pos++;
+        }
+        // Exponent, as in 1.5e-3.
+        if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+            int exponentStart = pos++;
+            if (pos < text.length() && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) pos++;
+            if (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                while (pos < text.length() && Character.isDigit(text.charAt(pos))) pos++;
+            }
+            else {
+                pos = exponentStart;
+            }
+        }
+        try {
+            return Double.parseDouble(text.substring(start, pos));
+        }
+        catch (NumberFormatException ex) {
+            throw error("Invalid number");
+        }
+    }
+
+    double parseFunctionCall(String name) {
+        double[] args = new double[2];
+        int numArgs = 0;
+        if (!consume(')')) {
+            do {
+                if (numArgs == args.length) throw error("Too many arguments to " + name);
+                args[numArgs++] = parseSum();
+            } while (consume(','));
+            if (!consume(')')) throw error("Expected )");
+        }
+        return callFunction(name, args, numArgs);
+    }
+
+    double callFunction(String name, double[] args, int numArgs) {
+        int expectedArgs = ("min".equals(name) || "max".equals(name) || "atan2".equals(name)) ? 2 : 1;
+        if (numArgs != expectedArgs) {
+            throw error(name + " takes " + expectedArgs + " argument(s)");
+        }
+        switch (name) {
+            case "sin": return Math.sin(args[0]);
+            case "cos": return Math.cos(args[0]);
+            case "tan": return Math.tan(args[0]);
+            case "asin": return Math.asin(args[0]);
+            case "acos": return Math.acos(args[0]);
+            case "atan": return Math.atan(args[0]);
+            case "atan2": return Math.atan2(args[0], args[1]);
+            case "sqrt": return Math.sqrt(args[0]);
+            case "abs": return Math.abs(args[0]);
+            case "floor": return Math.floor(args[0]);
+            case "ceil": return Math.ceil(args[0]);
+            case "round": return Math.round(args[0]);
+            case "radians": return Math.toRadians(args[0]);
+            case "degrees": return Math.toDegrees(args[0]);
+            case "min": return Math.min(args[0], args[1]);
+            case "max": return Math.max(args[0], args[1]);
+            default: throw error("Unknown function " + name);
+        }
+    }
+
+    double variableValue(String name) {
+        if ("pi".equals(name)) return Math.PI;
+        if (variables == null) {
+            throw error("Variables aren't available for " + name);
+        }
+        Object value = variables.getVariableOrDefault(name, null);
+        if (!(value instanceof Number)) {
+            throw error((value == null) ? "Variable not set: " + name : "Variable is not a number: " + name);
+        }
+        return ((Number) value).doubleValue();
+    }
+}
@@ -0,0 +1,202 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Declares the parameters that a FieldElement class reads from its parameter map, with their
+ * types, and compiles an element's map into arrays of primitive values when it's created. Each
+ * class adds its parameters once in a static initializer, keeping the returned indexes, and reads
+ * values by index from the compiled Values, so there are no map lookups, casts, or conversions
+ * after creation. Numeric values can be numbers, or strings with expressions that are evaluated
+ * once by ParameterExpression.
+ */
+public class ParameterSchema {
+
+    public enum Type {
+        FLOAT,
+        INT,
+        LONG,
+        // True for a true boolean or a nonzero number.
+        BOOLEAN,
+        // A list of numbers, such as a position.
+        FLOAT_ARRAY,
+        // A list of lists of numbers, such as the points of a path.
+        FLOAT_ARRAY_LIST,
+    }
+
+    /** Schema with no parameters, used by elements that don't declare one. */
+    public static final ParameterSchema EMPTY = new ParameterSchema();
+
+    final List<String> keys = new ArrayList<String>();
+    final List<Type> types = new ArrayList<Type>();
+    final List<Double> defaultValues = new ArrayList<Double>();
+    final Map<String, Integer> indexesByKey = new HashMap<String, Integer>();
+
+    /**
+     * Adds a parameter, and returns the index with which to read its values. Numeric and boolean
+     * parameters that are missing have the given default value (1 for true).
+     */
+    public int add(String key, Type type, double defaultValue) {
+        if (indexesByKey.containsKey(key)) {
+            throw new IllegalArgumentException("Duplicate parameter: " + key);
+        }
+        int index = keys.size();
+        keys.add(key);
+        types.add(type);
+        defaultValues.add(defaultValue);
+        indexesByKey.put(key, index);
+        return index;
+    }
+
+    public int addFloat(String key) {
+        return add(key, Type.FLOAT, 0);
+    }
+
+    public int addInt(String key, int defaultValue) {
+        return add(key, Type.INT, defaultValue);
+    }
+
+    public int addBoolean(String key) {
+        return add(key, Type.BOOLEAN, 0);
+    }
+
+    public int addFloatArray(String key) {
+        return add(key, Type.FLOAT_ARRAY, 0);
+    }
+
+    public int addFloatArrayList(String key) {
+        return add(key, Type.FLOAT_ARRAY_LIST, 0);
+    }
+
+    /** Returns the index of the parameter with the given key, or -1 if it's not in the schema. */
+    public int indexOf(String key) {
+        Integer index = indexesByKey.get(key);
+        return (index != null) ? index : -1;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /** Compiled values of one parameter map, read with the indexes returned by add. */
+    public static class Values {
+        final ParameterSchema schema;
+        final double[] numbers;
+        final float[][] floatArrays;
+        final float[][][] floatArrayLists;
+        final boolean[] present;
+
+        Values(ParameterSchema schema) {
+            this.schema = schema;
+            int size = schema.size();
+            numbers = new double[size];
+            floatArrays = new float[size][];
+            floatArrayLists = new float[size][][];
+            present = new boolean[size];
+        }
+
+        public ParameterSchema getSchema() {
+            return schema;
+        }
+
+        /** Returns true if the parameter was in the map, rather than having its default value. */
+        public boolean isPresent(int index) {
+            return present[index];
+        }
+
+        public float getFloat(int index) {
+            return (float) numbers[index];
+        }
+
+        public double getDouble(int index) {
+            return numbers[index];
+        }
+
+        public int getInt(int index) {
+            return (int) numbers[index];
+        }
+
+        public long getLong(int index) {
+            return (long) numbers[index];
+        }
+
+        public boolean getBoolean(int index) {
+            return numbers[index] != 0;
+        }
+
+        /** Returns the values of a FLOAT_ARRAY parameter, or null if it's missing. Not copied. */
+        public float[] getFloatArray(int index) {
+            return floatArrays[index];
+        }
+
+        /** Returns the values of a FLOAT_ARRAY_LIST parameter, or null if it's missing. Not copied. */
+        public float[][] getFloatArrayList(int index) {
+            return floatArrayLists[index];
+        }
+    }
+
+    /**
+     * Converts the values in params of this schema's parameters, evaluating expressions with the
+     * variables in collection (which can be null if there are none). Throws
+     * IllegalArgumentException if an expression is invalid.
+     */
+    public Values compile(Map<String, ?> params, FieldElementCollection collection) {
+        Values values = new Values(this);
+        for (int i=0; i<keys.size(); i++) {
+            String key = keys.get(i);
+            Object value = params.get(key);
+            if (value == null) {
+                values.numbers[i] = defaultValues.get(i);
+                continue;
+            }
+            values.present[i] = true;
+            try {
+                switch (types.get(i)) {
+                    case BOOLEAN:
+                        values.numbers[i] = (value instanceof Boolean) ?
+                                (((Boolean) value) ? 1 : 0) :
+                                (toNumber(value, collection) != 0) ? 1 : 0;
+                        break;
+                    case FLOAT_ARRAY:
+                        values.floatArrays[i] = toFloatArray((List<?>) value, collection);
+                        break;
+                    case FLOAT_ARRAY_LIST:
+                        List<?> lists = (List<?>) value;
+                        float[][] arrays = new float[lists.size()][];
+                        for (int j=0; j<arrays.length; j++) {
+                            arrays[j] = toFloatArray((List<?>) lists.get(j), collection);
+                        }
+                        values.floatArrayLists[i] = arrays;
+                        break;
+                    default:
+                        values.numbers[i] = toNumber(value, collection);
+                }
+            }
+            catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Invalid value for \"" + key + "\": " + ex.getMessage(), ex);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the value of a number, or of a string containing a number or expression. Other
+     * values are 0, as with MathUtils.asFloat.
+     */
+    public static double toNumber(Object value, FieldElementCollection collection) {
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value instanceof String) return ParameterExpression.evaluate((String) value, collection);
+        return 0;
+    }
+
+    static float[] toFloatArray(List<?> list, FieldElementCollection collection) {
+        float[] result = new float[list.size()];
+        for (int i=0; i<result.length; i++) {
+            result[i] = (float) toNumber(list.get(i), collection);
+        }
+        return result;
+    }
+}
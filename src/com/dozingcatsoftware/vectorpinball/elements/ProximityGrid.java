@@ -0,0 +1,226 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.badlogic.gdx.math.Vector2;
+import com.dozingcatsoftware.vectorpinball.model.Ball;
+
+/**
+ * Uniform grid over the static areas of rollovers and sensors, used to find which of them balls
+ * are in without testing every ball against every rollover and sensor. The grid is built once when
+ * the field is created; each rollover and sensor is registered in every cell its area overlaps.
+ * On each tick, update() looks up the cell containing each ball and only tests the rollovers and
+ * sensors registered in that cell. RolloverGroupElement and SensorElement read the results in
+ * their tick() methods instead of checking every ball themselves.
+ */
+public class ProximityGrid {
+
+    // Limits the number of cells when a layout has a few widely separated small rollovers.
+    static final int MAX_CELLS_PER_AXIS = 64;
+    static final float MIN_CELL_SIZE = 0.5f;
+
+    final SensorElement[] sensors;
+    final RolloverGroupElement.Rollover[] rollovers;
+
+    float minX, minY;
+    float cellSize;
+    int numColumns, numRows;
+    // Items in cell i are cellItems[cellStarts[i]] to cellItems[cellStarts[i+1]-1]. Item indexes
+    // less than sensors.length refer to sensors, others to rollovers[index - sensors.length].
+    int[] cellStarts;
+    int[] cellItems;
+
+    // Sensors and rollovers found by the last update, so their state can be cleared next time.
+    final SensorElement[] sensorsInRange;
+    int numSensorsInRange;
+    final RolloverGroupElement.Rollover[] rolloversHit;
+    int numRolloversHit;
+    // False if balls were added or removed since the last update, for example by a delegate
+    // starting multiball from an element's tick. The results may then refer to balls that are no
+    // longer in play, so elements check the field's balls themselves for the rest of the tick.
+    boolean upToDate = false;
+
+    /**
+     * Creates a grid for the rollovers and sensors in the given elements, and attaches it to them
+     * so that their tick() methods use it. Other element types are ignored.
+     */
+    public ProximityGrid(List<FieldElement> elements) {
+        List<SensorElement> sensorList = new ArrayList<SensorElement>();
+        List<RolloverGroupElement.Rollover> rolloverList = new ArrayList<RolloverGroupElement.Rollover>();
+        for (FieldElement element : elements) {
+            if (element instanceof SensorElement) {
+                SensorElement sensor = (SensorElement) element;
+                sensor.proximityGrid = this;
+                sensor.ballInGridRange = null;
+                sensorList.add(sensor);
+            }
+            else if (element instanceof RolloverGroupElement) {
+                RolloverGroupElement group = (RolloverGroupElement) element;
+                group.proximityGrid = this;
+                group.gridHitRollovers.clear();
+                for (RolloverGroupElement.Rollover rollover : group.rollovers) {
+                    rollover.hitInGrid = false;
+                    rolloverList.add(rollover);
+                }
+            }
+        }
+        sensors = sensorList.toArray(new SensorElement[0]);
+        rollovers = rolloverList.toArray(new RolloverGroupElement.Rollover[0]);
+        sensorsInRange = new SensorElement[sensors.length];
+        rolloversHit = new RolloverGroupElement.Rollover[rollovers.length];
+        buildCells();
+    }
+
+    float itemMinX(int item) {
+        if (item < sensors.length) return sensors[item].xmin;
+        RolloverGroupElement.Rollover r = rollovers[item - sensors.length];
+        return r.cx - r.radius;
+    }
+
+    float itemMinY(int item) {
+        if (item < sensors.length) return sensors[item].ymin;
+        RolloverGroupElement.Rollover r = rollovers[item - sensors.length];
+        return r.cy - r.radius;
+    }
+
+    float itemMaxX(int item) {
+        if (item < sensors.length) return sensors[item].xmax;
+        RolloverGroupElement.Rollover r = rollovers[item - sensors.length];
+        return r.cx + r.radius;
+    }
+
+    float itemMaxY(int item) {
+        if (item < sensors.length) return sensors[item].ymax;
+        RolloverGroupElement.Rollover r = rollovers[item - sensors.length];
+        return r.cy + r.radius;
+    }
+
+    void buildCells() {
+        int numItems = sensors.length + rollovers.length;
+        if (numItems == 0) {
+            numColumns = numRows = 0;
+            cellStarts = new int[1];
+            cellItems = new int[0];
+            return;
+        }
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        minX = minY = Float.POSITIVE_INFINITY;
+        float maxRolloverDiameter = 0;
+        for (int i=0; i<numItems; i++) {
+            minX = Math.min(minX, itemMinX(i));
+            minY = Math.min(minY, itemMinY(i));
+            maxX = Math.max(maxX, itemMaxX(i));
+            maxY = Math.max(maxY, itemMaxY(i));
+        }
+        for (RolloverGroupElement.Rollover r : rollovers) {
+            maxRolloverDiameter = Math.max(maxRolloverDiameter, 2*r.radius);
+        }
+        // Cells about the size of a rollover keep the number of candidates per ball small.
+        float width = maxX - minX;
+        float height = maxY - minY;
+        cellSize = Math.max(MIN_CELL_SIZE, maxRolloverDiameter);
+        cellSize = Math.max(cellSize, Math.max(width, height) / MAX_CELLS_PER_AXIS);
+        numColumns = 1 + (int) (width / cellSize);
+        numRows = 1 + (int) (height / cellSize);
+
+        // Count items per cell, then fill them in.
+        int numCells = numColumns * numRows;
+        cellStarts = new int[numCells + 1];
+        for (int i=0; i<numItems; i++) {
+            int c0 = column(itemMinX(i)), c1 = column(itemMaxX(i));
+            int r0 = row(itemMinY(i)), r1 = row(itemMaxY(i));
+            for (int row=r0; row<=r1; row++) {
+                for (int col=c0; col<=c1; col++) {
+                    cellStarts[row*numColumns + col + 1]++;
+                }
+            }
+        }
+        for (int i=0; i<numCells; i++) {
+            cellStarts[i+1] += cellStarts[i];
+        }
+        cellItems = new int[cellStarts[numCells]];
+        int[] fillPositions = new int[numCells];
+        for (int i=0; i<numItems; i++) {
+            int c0 = column(itemMinX(i)), c1 = column(itemMaxX(i));
+            int r0 = row(itemMinY(i)), r1 = row(itemMaxY(i));
+            for (int row=r0; row<=r1; row++) {
+                for (int col=c0; col<=c1; col++) {
+                    int cell = row*numColumns + col;
+                    cellItems[cellStarts[cell] + fillPositions[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    int column(float x) {
+        return Math.min(numColumns - 1, Math.max(0, (int) ((x - minX) / cellSize)));
+    }
+
+    int row(float y) {
+        return Math.min(numRows - 1, Math.max(0, (int) ((y - minY) / cellSize)));
+    }
+
+    /** Called by Field when balls are added or removed, to invalidate the last update. */
+    public void ballsChanged() {
+        upToDate = false;
+    }
+
+    /** Returns true if no balls have been added or removed since the last update. */
+    public boolean isUpToDate() {
+        return upToDate;
+    }
+
+    /**
+     * Finds the sensors and rollovers that contain each ball's position. Called by Field once per
+     * tick before calling tick() on elements, so all elements see ball positions as of the end of
+     * the physics step.
+     */
+    public void update(List<Ball> balls) {
+        for (int i=0; i<numSensorsInRange; i++) {
+            sensorsInRange[i].ballInGridRange = null;
+        }
+        numSensorsInRange = 0;
+        for (int i=0; i<numRolloversHit; i++) {
+            rolloversHit[i].hitInGrid = false;
+            rolloversHit[i].group.gridHitRollovers.clear();
+        }
+        numRolloversHit = 0;
+        upToDate = true;
+        if (cellItems.length == 0) return;
+
+        for (int i=0; i<balls.size(); i++) {
+            Ball ball = balls.get(i);
+            Vector2 position = ball.getPosition();
+            float px = position.x;
+            float py = position.y;
+            int col = (int) Math.floor((px - minX) / cellSize);
+            int row = (int) Math.floor((py - minY) / cellSize);
+            if (col < 0 || col >= numColumns || row < 0 || row >= numRows) continue;
+            int cell = row*numColumns + col;
+            for (int j=cellStarts[cell]; j<cellStarts[cell+1]; j++) {
+                int item = cellItems[j];
+                if (item < sensors.length) {
+                    SensorElement sensor = sensors[item];
+                    // Sensors report the first ball in range, as when they check balls themselves.
+                    if (sensor.ballInGridRange == null && sensor.ballInRange(ball)) {
+                        sensor.ballInGridRange = ball;
+                        sensorsInRange[numSensorsInRange++] = sensor;
+                    }
+                }
+                else {
+                    RolloverGroupElement.Rollover rollover = rollovers[item - sensors.length];
+                    if (!rollover.hitInGrid && rollover.containsPoint(px, py)) {
+                        rollover.hitInGrid = true;
+                        rolloversHit[numRolloversHit++] = rollover;
+                        rollover.group.gridHitRollovers.add(rollover);
+                    }
+                }
+            }
+        }
+        // Rollovers are found in cell order, groups expect them in their original order.
+        for (int i=0; i<numRolloversHit; i++) {
+            rolloversHit[i].group.sortGridHitRollovers();
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package com.dozingcatsoftware.vectorpinball.elements;
 
-import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -36,6 +34,20 @@ public class RolloverGroupElement extends FieldElement {
     public static final String COLOR_PROPERTY = "color";
     public static final String SCORE_PROPERTY = "score";
 
+    static final ParameterSchema SCHEMA = new ParameterSchema();
+    static final int TOGGLE_OFF_PARAM = SCHEMA.addBoolean(TOGGLE_OFF_PROPERTY);
+    static final int CYCLE_ON_FLIPPER_PARAM = SCHEMA.addBoolean(CYCLE_ON_FLIPPER_PROPERTY);
+    static final int IGNORE_BALL_PARAM = SCHEMA.addBoolean(IGNORE_BALL_PROPERTY);
+    static final int RADIUS_PARAM = SCHEMA.addFloat(RADIUS_PROPERTY);
+    static final int RESET_DELAY_PARAM = SCHEMA.addFloat(RESET_DELAY_PROPERTY);
+
+    // Parameters of the maps in the "rollovers" list. Color is read directly from the map.
+    static final ParameterSchema ROLLOVER_SCHEMA = new ParameterSchema();
+    static final int ROLLOVER_POSITION_PARAM = ROLLOVER_SCHEMA.addFloatArray(POSITION_PROPERTY);
+    static final int ROLLOVER_RADIUS_PARAM = ROLLOVER_SCHEMA.addFloat(RADIUS_PROPERTY);
+    static final int ROLLOVER_SCORE_PARAM = ROLLOVER_SCHEMA.add(SCORE_PROPERTY, ParameterSchema.Type.LONG, 0);
+    static final int ROLLOVER_RESET_DELAY_PARAM = ROLLOVER_SCHEMA.addFloat(RESET_DELAY_PROPERTY);
+
     static class Rollover {
         float cx, cy;
         float radius;
@@ -43,6 +55,17 @@ public class RolloverGroupElement extends FieldElement {
         Color color;
         long score;
         float resetDelay;
+        Runnable resetAction; // Deactivates the rollover, scheduled when resetDelay>0.
+        long resetActionHandle; // Most recently scheduled resetAction, cancelled if toggled off.
+        RolloverGroupElement group;
+        int index; // Position in the group's rollovers list.
+        boolean hitInGrid; // Set by ProximityGrid.update.
+
+        boolean containsPoint(float x, float y) {
+            float xdiff = x - cx;
+            float ydiff = y - cy;
+            return xdiff*xdiff + ydiff*ydiff <= radiusSquared;
+        }
     }
 
     static final Color DEFAULT_COLOR = Color.fromRGB(0, 255, 0);
@@ -56,32 +79,56 @@ public class RolloverGroupElement extends FieldElement {
     List<Rollover> activeRollovers = new ArrayList<Rollover>();
     List<Rollover> rolloversHitOnPreviousTick = new ArrayList<Rollover>();
     boolean isVisible = true;
+    // When set, ProximityGrid finds the rollovers hit by balls and adds them to gridHitRollovers.
+    ProximityGrid proximityGrid;
+    List<Rollover> gridHitRollovers = new ArrayList<Rollover>();
+
+    @Override protected ParameterSchema getParameterSchema() {
+        return SCHEMA;
+    }
 
     @SuppressWarnings("unchecked")
     @Override public void finishCreateElement(Map<String, ?> params, FieldElementCollection collection) {
-        this.canToggleOff = Boolean.TRUE.equals(params.get(TOGGLE_OFF_PROPERTY));
-        this.cycleOnFlipper = Boolean.TRUE.equals(params.get(CYCLE_ON_FLIPPER_PROPERTY));
-        this.ignoreBall = Boolean.TRUE.equals(params.get(IGNORE_BALL_PROPERTY));
-        this.defaultRadius = asFloat(params.get(RADIUS_PROPERTY));
-        this.defaultResetDelay = asFloat(params.get(RESET_DELAY_PROPERTY));
+        this.canToggleOff = parameterValues.getBoolean(TOGGLE_OFF_PARAM);
+        this.cycleOnFlipper = parameterValues.getBoolean(CYCLE_ON_FLIPPER_PARAM);
+        this.ignoreBall = parameterValues.getBoolean(IGNORE_BALL_PARAM);
+        this.defaultRadius = parameterValues.getFloat(RADIUS_PARAM);
+        this.defaultResetDelay = parameterValues.getFloat(RESET_DELAY_PARAM);
 
         List<Map<String, ?>> rolloverMaps = (List<Map<String, ?>>)params.get(ROLLOVERS_PROPERTY);
         for(Map<String, ?> rmap : rolloverMaps) {
-            Rollover rollover = new Rollover();
+            final Rollover rollover = new Rollover();
+            rollover.group = this;
+            rollover.index = rollovers.size();
             rollovers.add(rollover);
 
-            List<?> pos = (List<?>)rmap.get(POSITION_PROPERTY);
-            rollover.cx = asFloat(pos.get(0));
-            rollover.cy = asFloat(pos.get(1));
+            ParameterSchema.Values values = ROLLOVER_SCHEMA.compile(rmap, collection);
+            float[] pos = values.getFloatArray(ROLLOVER_POSITION_PARAM);
+            rollover.cx = pos[0];
+            rollover.cy = pos[1];
             // radius, color, score, and reset delay can be specified for each rollover.
             // If not present use default from group.
-            rollover.radius = (rmap.containsKey(RADIUS_PROPERTY)) ? asFloat(rmap.get(RADIUS_PROPERTY)) : this.defaultRadius;
+            rollover.radius = values.isPresent(ROLLOVER_RADIUS_PARAM) ? values.getFloat(ROLLOVER_RADIUS_PARAM) : this.defaultRadius;
             rollover.color = (rmap.containsKey(COLOR_PROPERTY)) ? Color.fromList((List<Number>)rmap.get(COLOR_PROPERTY)) : null;
-            rollover.score = (rmap.containsKey(SCORE_PROPERTY)) ? ((Number)rmap.get(SCORE_PROPERTY)).longValue() : this.score;
-            rollover.resetDelay = (rmap.containsKey(RESET_DELAY_PROPERTY)) ? asFloat(rmap.get(RESET_DELAY_PROPERTY)) : this.defaultResetDelay;
+            rollover.score = values.isPresent(ROLLOVER_SCORE_PARAM) ? values.getLong(ROLLOVER_SCORE_PARAM) : this.score;
+            rollover.resetDelay = values.isPresent(ROLLOVER_RESET_DELAY_PARAM) ? values.getFloat(ROLLOVER_RESET_DELAY_PARAM) : this.defaultResetDelay;
 
             rollover.radiusSquared = rollover.radius * rollover.radius;
+            rollover.resetAction = new Runnable() {
+                @Override
+                public void run() {
+                    activeRollovers.remove(rollover);
+                }
+            };
         }
+        // The lists updated while ticking never hold more than every rollover, so size them now
+        // instead of letting them allocate their storage the first time a rollover is hit.
+        int n = rollovers.size();
+        activeRollovers = new ArrayList<Rollover>(n);
+        rolloversHitOnPreviousTick = new ArrayList<Rollover>(n);
+        gridHitRollovers = new ArrayList<Rollover>(n);
+        hitRollovers = new ArrayList<Rollover>(n);
+        newActiveRollovers = new ArrayList<Rollover>(n);
     }
 
     @Override public void createBodies(World world) {
@@ -104,12 +151,8 @@ public class RolloverGroupElement extends FieldElement {
             Rollover rollover = this.rollovers.get(i);
             boolean hit = false;
             for(int j=0; j<balls.size(); j++) {
-                Ball ball = balls.get(j);
-                Vector2 position = ball.getPosition();
-                float xdiff = position.x - rollover.cx;
-                float ydiff = position.y - rollover.cy;
-                float distanceSquared = xdiff*xdiff + ydiff*ydiff;
-                if (distanceSquared <= rollover.radiusSquared) {
+                Vector2 position = balls.get(j).getPosition();
+                if (rollover.containsPoint(position.x, position.y)) {
                     hit = true;
                     break;
                 }
@@ -121,6 +164,20 @@ public class RolloverGroupElement extends FieldElement {
         return hitRollovers;
     }
 
+    /** Sorts gridHitRollovers into the same order as the rollovers list. */
+    void sortGridHitRollovers() {
+        // Insertion sort; the list is short and usually already sorted.
+        for (int i=1; i<gridHitRollovers.size(); i++) {
+            Rollover r = gridHitRollovers.get(i);
+            int j = i - 1;
+            while (j >= 0 && gridHitRollovers.get(j).index > r.index) {
+                gridHitRollovers.set(j+1, gridHitRollovers.get(j));
+                j--;
+            }
+            gridHitRollovers.set(j+1, r);
+        }
+    }
+
     /** Returns true if all rollovers in the group are active. */
     public boolean allRolloversActive() {
         return activeRollovers.size() == rollovers.size();
@@ -166,9 +223,11 @@ public class RolloverGroupElement extends FieldElement {
         if (this.ignoreBall) return;
 
         boolean allActivePrevious = this.allRolloversActive();
-        List<Rollover> hitRollovers = rolloversHitByBalls(field.getBalls());
+        List<Rollover> hitRollovers = (proximityGrid != null && proximityGrid.isUpToDate()) ?
+                gridHitRollovers : rolloversHitByBalls(field.getBalls());
         // only update rollovers that are hit on this tick and weren't on the previous tick
-        for(final Rollover rollover : hitRollovers) {
+        for(int i=0; i<hitRollovers.size(); i++) {
+            Rollover rollover = hitRollovers.get(i);
             if (rolloversHitOnPreviousTick.contains(rollover)) continue;
             // Inactive rollover becomes active, active rollover becomes inactive if toggleOff setting is true.
             // Add score whenever the state changes.
@@ -178,16 +237,14 @@ public class RolloverGroupElement extends FieldElement {
                 field.getAudioPlayer().playRollover();
                 // Set timer to clear rollover if reset parameter is present and >0.
                 if (rollover.resetDelay > 0) {
-                    field.scheduleAction((long)(rollover.resetDelay*1000), new Runnable() {
-                        @Override
-                        public void run() {
-                            activeRollovers.remove(rollover);
-                        }
-                    });
+                    rollover.resetActionHandle =
+                            field.scheduleAction((long)(rollover.resetDelay*1000), rollover.resetAction);
                 }
             }
             else if (this.canToggleOff) {
                 activeRollovers.remove(rollover);
+                // Don't let a pending reset deactivate the rollover early if it's hit again.
+                field.cancelScheduledAction(rollover.resetActionHandle);
                 field.addScore(rollover.score);
                 field.getAudioPlayer().playRollover();
             }
@@ -246,6 +303,14 @@ public class RolloverGroupElement extends FieldElement {
         }
     }
 
+    @Override public void resetForNewGame() {
+        super.resetForNewGame();
+        activeRollovers.clear();
+        rolloversHitOnPreviousTick.clear();
+        this.ignoreBall = parameterValues.getBoolean(IGNORE_BALL_PARAM);
+        this.isVisible = true;
+    }
+
     public boolean getIgnoreBall() {
         return this.ignoreBall;
     }
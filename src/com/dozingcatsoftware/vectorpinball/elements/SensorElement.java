@@ -1,7 +1,5 @@
 package com.dozingcatsoftware.vectorpinball.elements;
 
-import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
-
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -25,14 +23,24 @@ public class SensorElement extends FieldElement {
 
     public static final String RECT_PROPERTY = "rect";
 
+    static final ParameterSchema SCHEMA = new ParameterSchema();
+    static final int RECT_PARAM = SCHEMA.addFloatArray(RECT_PROPERTY);
+
     float xmin, ymin, xmax, ymax;
+    // When set, ProximityGrid determines which ball (if any) is in range on each tick.
+    ProximityGrid proximityGrid;
+    Ball ballInGridRange;
+
+    @Override protected ParameterSchema getParameterSchema() {
+        return SCHEMA;
+    }
 
     @Override public void finishCreateElement(Map<String, ?> params, FieldElementCollection collection) {
-        List<?> rectPos = (List<?>)params.get(RECT_PROPERTY);
-        this.xmin = Math.min(asFloat(rectPos.get(0)), asFloat(rectPos.get(2)));
-        this.ymin = Math.min(asFloat(rectPos.get(1)), asFloat(rectPos.get(3)));
-        this.xmax = Math.max(asFloat(rectPos.get(0)), asFloat(rectPos.get(2)));
-        this.ymax = Math.max(asFloat(rectPos.get(1)), asFloat(rectPos.get(3)));
+        float[] rectPos = parameterValues.getFloatArray(RECT_PARAM);
+        this.xmin = Math.min(rectPos[0], rectPos[2]);
+        this.ymin = Math.min(rectPos[1], rectPos[3]);
+        this.xmax = Math.max(rectPos[0], rectPos[2]);
+        this.ymax = Math.max(rectPos[1], rectPos[3]);
     }
 
     @Override public void createBodies(World world) {
@@ -53,6 +61,12 @@ public class SensorElement extends FieldElement {
     }
 
     @Override public void tick(Field field) {
+        if (proximityGrid != null && proximityGrid.isUpToDate()) {
+            if (ballInGridRange != null) {
+                field.getDelegate().ballInSensorRange(field, this, ballInGridRange);
+            }
+            return;
+        }
         List<Ball> balls = field.getBalls();
         for(int i=0; i<balls.size(); i++) {
             Ball ball = balls.get(i);
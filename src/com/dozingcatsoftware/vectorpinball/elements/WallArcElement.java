@@ -1,6 +1,5 @@
 package com.dozingcatsoftware.vectorpinball.elements;
 
-import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
 import static com.dozingcatsoftware.vectorpinball.util.MathUtils.toRadians;
 
 import java.util.ArrayList;
@@ -40,28 +39,43 @@ public class WallArcElement extends FieldElement {
     public static final String MAX_ANGLE_PROPERTY = "maxangle";
     public static final String IGNORE_BALL_PROPERTY = "ignoreBall";
 
+    static final ParameterSchema SCHEMA = new ParameterSchema();
+    static final int CENTER_PARAM = SCHEMA.addFloatArray(CENTER_PROPERTY);
+    static final int RADIUS_PARAM = SCHEMA.addFloat(RADIUS_PROPERTY);
+    static final int X_RADIUS_PARAM = SCHEMA.addFloat(X_RADIUS_PROPERTY);
+    static final int Y_RADIUS_PARAM = SCHEMA.addFloat(Y_RADIUS_PROPERTY);
+    static final int NUM_SEGMENTS_PARAM = SCHEMA.addInt(NUM_SEGMENTS_PROPERTY, 5);
+    static final int MIN_ANGLE_PARAM = SCHEMA.addFloat(MIN_ANGLE_PROPERTY);
+    static final int MAX_ANGLE_PARAM = SCHEMA.addFloat(MAX_ANGLE_PROPERTY);
+    static final int IGNORE_BALL_PARAM = SCHEMA.addBoolean(IGNORE_BALL_PROPERTY);
+
     public List<Body> wallBodies = new ArrayList<Body>();
     float[][] lineSegments;
+    boolean useChainShapes;
+
+    @Override protected ParameterSchema getParameterSchema() {
+        return SCHEMA;
+    }
 
     @Override public void finishCreateElement(Map<String, ?> params, FieldElementCollection collection) {
-        List<?> centerPos = (List<?>)params.get(CENTER_PROPERTY);
-        float cx = asFloat(centerPos.get(0));
-        float cy = asFloat(centerPos.get(1));
+        useChainShapes = collection.usesChainShapeWalls();
+        float[] centerPos = parameterValues.getFloatArray(CENTER_PARAM);
+        float cx = centerPos[0];
+        float cy = centerPos[1];
 
         // Can specify "radius" for circle, or "xradius" and "yradius" for ellipse.
         float xradius, yradius;
-        if (params.containsKey(RADIUS_PROPERTY)) {
-            xradius = yradius = asFloat(params.get(RADIUS_PROPERTY));
+        if (parameterValues.isPresent(RADIUS_PARAM)) {
+            xradius = yradius = parameterValues.getFloat(RADIUS_PARAM);
         }
         else {
-            xradius = asFloat(params.get(X_RADIUS_PROPERTY));
-            yradius = asFloat(params.get(Y_RADIUS_PROPERTY));
+            xradius = parameterValues.getFloat(X_RADIUS_PARAM);
+            yradius = parameterValues.getFloat(Y_RADIUS_PARAM);
         }
 
-        Number segments = (Number)params.get(NUM_SEGMENTS_PROPERTY);
-        int numsegments = (segments!=null) ? segments.intValue() : 5;
-        float minangle = toRadians(asFloat(params.get(MIN_ANGLE_PROPERTY)));
-        float maxangle = toRadians(asFloat(params.get(MAX_ANGLE_PROPERTY)));
+        int numsegments = parameterValues.getInt(NUM_SEGMENTS_PARAM);
+        float minangle = toRadians(parameterValues.getFloat(MIN_ANGLE_PARAM));
+        float maxangle = toRadians(parameterValues.getFloat(MAX_ANGLE_PARAM));
         float diff = maxangle - minangle;
         // Create numsegments line segments to approximate circular arc.
         lineSegments = new float[numsegments][];
@@ -77,19 +91,25 @@ public class WallArcElement extends FieldElement {
     }
 
     @Override public void createBodies(World world) {
-        if (getBooleanParameterValueForKey(IGNORE_BALL_PROPERTY)) return;
+        if (parameterValues.getBoolean(IGNORE_BALL_PARAM)) return;
 
-        for (float[] segment : this.lineSegments) {
-            Body wall = Box2DFactory.createThinWall(
-                    world, segment[0], segment[1], segment[2], segment[3], 0f);
-            this.wallBodies.add(wall);
-        }
+        // The segments form one chain on one body, so a ball rolls along the arc without catching on joints.
+        this.wallBodies.addAll(Box2DFactory.createWallPath(world, this.lineSegments, 0f, useChainShapes));
     }
 
     @Override public List<Body> getBodies() {
         return wallBodies;
     }
 
+    @Override public void destroyBodies(World world) {
+        super.destroyBodies(world);
+        wallBodies.clear();
+    }
+
+    @Override public boolean isDrawnStatically() {
+        return true;
+    }
+
     @Override public void draw(IFieldRenderer renderer) {
         Color color = currentColor(DEFAULT_WALL_COLOR);
         for (float[] segment : this.lineSegments) {
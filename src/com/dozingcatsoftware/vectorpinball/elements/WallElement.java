@@ -1,7 +1,5 @@
 package com.dozingcatsoftware.vectorpinball.elements;
 
-import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
-
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +40,15 @@ public class WallElement extends FieldElement {
     public static final String IGNORE_BALL_PROPERTY = "ignoreBall";
     public static final String DISABLED_PROPERTY = "disabled";
 
+    static final ParameterSchema SCHEMA = new ParameterSchema();
+    static final int POSITION_PARAM = SCHEMA.addFloatArray(POSITION_PROPERTY);
+    static final int RESTITUTION_PARAM = SCHEMA.addFloat(RESTITUTION_PROPERTY);
+    static final int KICK_PARAM = SCHEMA.addFloat(KICK_PROPERTY);
+    static final int KILL_PARAM = SCHEMA.addBoolean(KILL_PROPERTY);
+    static final int RETRACT_WHEN_HIT_PARAM = SCHEMA.addBoolean(RETRACT_WHEN_HIT_PROPERTY);
+    static final int IGNORE_BALL_PARAM = SCHEMA.addBoolean(IGNORE_BALL_PROPERTY);
+    static final int DISABLED_PARAM = SCHEMA.addBoolean(DISABLED_PROPERTY);
+
     Body wallBody;
     List<Body> bodySet;
     float x1, y1, x2, y2;
@@ -55,20 +62,28 @@ public class WallElement extends FieldElement {
     boolean ignoreBall;
     boolean visible = true;
 
+    @Override protected ParameterSchema getParameterSchema() {
+        return SCHEMA;
+    }
+
     @Override public void finishCreateElement(Map<String, ?> params, FieldElementCollection collection) {
-        List<?> pos = (List<?>)params.get(POSITION_PROPERTY);
-        this.x1 = asFloat(pos.get(0));
-        this.y1 = asFloat(pos.get(1));
-        this.x2 = asFloat(pos.get(2));
-        this.y2 = asFloat(pos.get(3));
-        this.length = (float) Math.hypot(x2-x1, y2-y1);
-        this.restitution = asFloat(params.get(RESTITUTION_PROPERTY));
+        setPositionFromParameters();
+        this.restitution = parameterValues.getFloat(RESTITUTION_PARAM);
+
+        this.kick = parameterValues.getFloat(KICK_PARAM);
+        this.killBall = parameterValues.getBoolean(KILL_PARAM);
+        this.retractWhenHit = parameterValues.getBoolean(RETRACT_WHEN_HIT_PARAM);
+        this.disabled = parameterValues.getBoolean(DISABLED_PARAM);
+        this.ignoreBall = parameterValues.getBoolean(IGNORE_BALL_PARAM);
+    }
 
-        this.kick = asFloat(params.get(KICK_PROPERTY));
-        this.killBall = (Boolean.TRUE.equals(params.get(KILL_PROPERTY)));
-        this.retractWhenHit = (Boolean.TRUE.equals(params.get(RETRACT_WHEN_HIT_PROPERTY)));
-        this.disabled = Boolean.TRUE.equals(params.get(DISABLED_PROPERTY));
-        this.ignoreBall = Boolean.TRUE.equals(params.get(IGNORE_BALL_PROPERTY));
+    void setPositionFromParameters() {
+        float[] pos = parameterValues.getFloatArray(POSITION_PARAM);
+        this.x1 = pos[0];
+        this.y1 = pos[1];
+        this.x2 = pos[2];
+        this.y2 = pos[3];
+        this.length = (float) Math.hypot(x2-x1, y2-y1);
     }
 
     @Override public void createBodies(World world) {
@@ -84,13 +99,29 @@ public class WallElement extends FieldElement {
         }
     }
 
+    @Override public void resetForNewGame() {
+        super.resetForNewGame();
+        // Delegates can move and hide walls. The body's transform and active flag (and so whether
+        // the wall is retracted) have already been restored by Field.
+        setPositionFromParameters();
+        this.visible = true;
+    }
+
+    @Override public void destroyBodies(World world) {
+        super.destroyBodies(world);
+        wallBody = null;
+        bodySet = Collections.emptyList();
+    }
+
     public boolean isRetracted() {
         return wallBody!=null && !wallBody.isActive();
     }
 
     public void setRetracted(boolean retracted) {
-        if (retracted!=this.isRetracted()) {
+        // Walls that ignore the ball, or have been removed from the field, have no body.
+        if (wallBody!=null && retracted!=this.isRetracted()) {
             wallBody.setActive(!retracted);
+            staticDrawingChanged();
         }
     }
 
@@ -98,7 +129,10 @@ public class WallElement extends FieldElement {
         return visible;
     }
     public void setVisible(boolean visible) {
-        this.visible = visible;
+        if (visible != this.visible) {
+            this.visible = visible;
+            staticDrawingChanged();
+        }
     }
 
     @Override public List<Body> getBodies() {
@@ -110,6 +144,17 @@ public class WallElement extends FieldElement {
         return (this.kick > 0.01f);
     }
 
+    @Override public boolean isDrawnStatically() {
+        // Walls with a kick flash when hit, and stop flashing in tick().
+        return (this.kick <= 0.01f);
+    }
+
+    Vector2 impulse = new Vector2(); // reused by impulseForBall to avoid allocation
+
+    /**
+     * Returns the impulse to apply to a ball that hit the wall, or null if the wall has no kick.
+     * The returned vector is reused by subsequent calls.
+     */
     Vector2 impulseForBall(Ball ball) {
         if (this.kick <= 0.01f) return null;
         // Rotate wall direction 90 degrees for normal, choose direction toward ball.
@@ -130,7 +175,7 @@ public class WallElement extends FieldElement {
             ix = -ix;
             iy = -iy;
         }
-        return new Vector2(ix, iy);
+        return impulse.set(ix, iy);
     }
 
     @Override public void handleCollision(Ball ball, Body bodyHit, Field field) {
@@ -163,7 +208,10 @@ public class WallElement extends FieldElement {
         this.y2 = y1 + (float)(this.length * Math.sin(angle));
         // The "origin" is the midpoint of the wall, so we reposition it by calling
         // setTransform with the midpoint.
-        wallBody.setTransform((x1+x2) / 2f, (y1+y2) / 2f, angle);
+        if (wallBody != null) {
+            wallBody.setTransform((x1+x2) / 2f, (y1+y2) / 2f, angle);
+        }
+        staticDrawingChanged();
     }
 
     @Override public void draw(IFieldRenderer renderer) {
@@ -1,7 +1,5 @@
 package com.dozingcatsoftware.vectorpinball.elements;
 
-import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
-
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -24,37 +22,52 @@ public class WallPathElement extends FieldElement {
     public static final String POSITIONS_PROPERTY = "positions";
     public static final String IGNORE_BALL_PROPERTY = "ignoreBall";
 
+    static final ParameterSchema SCHEMA = new ParameterSchema();
+    static final int POSITIONS_PARAM = SCHEMA.addFloatArrayList(POSITIONS_PROPERTY);
+    static final int IGNORE_BALL_PARAM = SCHEMA.addBoolean(IGNORE_BALL_PROPERTY);
+
     List<Body> wallBodies = new ArrayList<Body>();
     float[][] lineSegments;
+    boolean useChainShapes;
+
+    @Override protected ParameterSchema getParameterSchema() {
+        return SCHEMA;
+    }
 
     @Override public void finishCreateElement(Map<String, ?> params, FieldElementCollection collection) {
-        @SuppressWarnings("unchecked")
-        List<List<?>> positions = (List<List<?>>)params.get(POSITIONS_PROPERTY);
+        useChainShapes = collection.usesChainShapeWalls();
+        float[][] positions = parameterValues.getFloatArrayList(POSITIONS_PARAM);
         // N positions produce N-1 line segments
-        lineSegments = new float[positions.size()-1][];
+        lineSegments = new float[positions.length-1][];
         for(int i=0; i<lineSegments.length; i++) {
-            List<?> startpos = positions.get(i);
-            List<?> endpos = positions.get(i+1);
+            float[] startpos = positions[i];
+            float[] endpos = positions[i+1];
 
-            float[] segment = {asFloat(startpos.get(0)), asFloat(startpos.get(1)),
-                    asFloat(endpos.get(0)), asFloat(endpos.get(1))};
+            float[] segment = {startpos[0], startpos[1], endpos[0], endpos[1]};
             lineSegments[i] = segment;
         }
     }
 
     @Override public void createBodies(World world) {
-        if (getBooleanParameterValueForKey(IGNORE_BALL_PROPERTY)) return;
+        if (parameterValues.getBoolean(IGNORE_BALL_PARAM)) return;
 
-        for (float[] segment : this.lineSegments) {
-            Body wall = Box2DFactory.createThinWall(world, segment[0], segment[1], segment[2], segment[3], 0f);
-            this.wallBodies.add(wall);
-        }
+        // A single body with the segments joined into a chain, so there are no corners between them.
+        this.wallBodies.addAll(Box2DFactory.createWallPath(world, this.lineSegments, 0f, useChainShapes));
     }
 
     @Override public List<Body> getBodies() {
         return wallBodies;
     }
 
+    @Override public void destroyBodies(World world) {
+        super.destroyBodies(world);
+        wallBodies.clear();
+    }
+
+    @Override public boolean isDrawnStatically() {
+        return true;
+    }
+
     @Override public void draw(IFieldRenderer renderer) {
         for (float[] segment : this.lineSegments) {
             renderer.drawLine(segment[0], segment[1], segment[2], segment[3], currentColor(DEFAULT_WALL_COLOR));
@@ -12,7 +12,30 @@ import groovy.lang.Script;
 
 public class GroovyFieldDelegateBuilder {
 
+    // The most recently compiled script, so that restarting a table with an unchanged script
+    // only creates a new instance of the class instead of compiling it again.
+    static String cachedScript;
+    static ClassLoader cachedParentClassLoader;
+    static Class<? extends Script> cachedScriptClass;
+
     public static GroovyFieldDelegate createFromScript(String script, ClassLoader classLoader) {
+        Class<? extends Script> groovyScriptClass = compileScript(script, classLoader);
+        try {
+            return (new GroovyFieldDelegate()).initWithScript(groovyScriptClass.newInstance());
+        }
+        catch (InstantiationException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the compiled class for the script, compiling it only if it's different from the
+     * script (or the parent class loader) of the previous call.
+     */
+    static synchronized Class<? extends Script> compileScript(String script, ClassLoader classLoader) {
+        if (script.equals(cachedScript) && classLoader == cachedParentClassLoader) {
+            return cachedScriptClass;
+        }
         CompilerConfiguration config = new CompilerConfiguration();
 
         SecureASTCustomizer secureAst = new SecureASTCustomizer();
@@ -29,12 +52,14 @@ public class GroovyFieldDelegateBuilder {
         try (GroovyClassLoader gcl = new GroovyClassLoader(classLoader, config)) {
             @SuppressWarnings("unchecked")
             Class<? extends Script> groovyScriptClass = gcl.parseClass(script);
-            return (new GroovyFieldDelegate()).initWithScript(groovyScriptClass.newInstance());
+            cachedScript = script;
+            cachedParentClassLoader = classLoader;
+            cachedScriptClass = groovyScriptClass;
+            return groovyScriptClass;
         }
-        catch (IOException | InstantiationException | IllegalAccessException e) {
+        catch (IOException e) {
             throw new RuntimeException(e);
         }
-
     }
 
 }
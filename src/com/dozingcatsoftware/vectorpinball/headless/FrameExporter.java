@@ -0,0 +1,223 @@
+package com.dozingcatsoftware.vectorpinball.headless;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
+import com.dozingcatsoftware.vectorpinball.model.Color;
+import com.dozingcatsoftware.vectorpinball.model.Field;
+import com.dozingcatsoftware.vectorpinball.model.FieldSimulator;
+import com.dozingcatsoftware.vectorpinball.util.JSONUtils;
+
+/**
+ * Plays a table headlessly with FieldSimulator's autoplay controller, and writes each frame as a
+ * PNG drawn by SoftwareRenderer. Frames are encoded with a minimal PNG writer that reuses its
+ * buffers and compresses at the fastest level, since frames are mostly black. With a frame count
+ * of 1 this produces a thumbnail of the table.
+ *
+ * Usage: FrameExporter table.json outputDir numFrames [width] [height]
+ */
+public class FrameExporter {
+
+    static final Color BACKGROUND_COLOR = Color.fromRGB(0, 0, 0);
+
+    /**
+     * Writes RGB images as PNG files. Images with at most 256 colors, which includes nearly all
+     * frames of vector tables, are written with a palette so there's a third as much data to
+     * compress; others are written as 8-bit RGB. Not thread safe; buffers are reused between images.
+     */
+    public static class PngEncoder {
+        static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+        static final int COLOR_TYPE_RGB = 2;
+        static final int COLOR_TYPE_PALETTE = 3;
+        static final int MAX_PALETTE_SIZE = 256;
+        // Open addressing hash table from colors to palette indices, with EMPTY_KEY for unused slots.
+        static final int PALETTE_TABLE_SIZE = 1024;
+        static final int EMPTY_KEY = -1;
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        final CRC32 crc = new CRC32();
+        byte[] scanlines = new byte[0];
+        byte[] compressed = new byte[0];
+        final byte[] header = new byte[8];
+        // Width, height, 8 bits per channel, color type, default compression and filtering, and no interlacing.
+        final byte[] ihdr = {0, 0, 0, 0, 0, 0, 0, 0, 8, COLOR_TYPE_RGB, 0, 0, 0};
+        final int[] paletteKeys = new int[PALETTE_TABLE_SIZE];
+        final int[] paletteValues = new int[PALETTE_TABLE_SIZE];
+        final byte[] palette = new byte[3 * MAX_PALETTE_SIZE];
+        int paletteSize;
+
+        /** Writes pixels (0xRRGGBB values, row by row) as a PNG. */
+        public void write(int[] pixels, int width, int height, OutputStream output) throws IOException {
+            // Each row is a filter type byte (0, none) followed by a palette index or RGB bytes per pixel.
+            int maxSize = (1 + 3 * width) * height;
+            if (scanlines.length < maxSize) {
+                scanlines = new byte[maxSize];
+                compressed = new byte[maxSize / 4 + 64];
+            }
+            int size = fillPaletteScanlines(pixels, width, height);
+            boolean usePalette = (size >= 0);
+            if (!usePalette) {
+                size = fillRgbScanlines(pixels, width, height);
+            }
+            int compressedSize = compress(size);
+
+            output.write(SIGNATURE);
+            putInt(ihdr, 0, width);
+            putInt(ihdr, 4, height);
+            ihdr[9] = (byte) (usePalette ? COLOR_TYPE_PALETTE : COLOR_TYPE_RGB);
+            writeChunk(output, "IHDR", ihdr, ihdr.length);
+            if (usePalette) {
+                writeChunk(output, "PLTE", palette, 3 * paletteSize);
+            }
+            writeChunk(output, "IDAT", compressed, compressedSize);
+            writeChunk(output, "IEND", compressed, 0);
+        }
+
+        /** Fills scanlines with palette indices, and returns their size or -1 if there are too many colors. */
+        int fillPaletteScanlines(int[] pixels, int width, int height) {
+            Arrays.fill(paletteKeys, EMPTY_KEY);
+            paletteSize = 0;
+            int lastColor = EMPTY_KEY;
+            int lastIndex = 0;
+            int p = 0;
+            for (int y = 0; y < height; y++) {
+                scanlines[p++] = 0;
+                int rowStart = y * width;
+                for (int x = 0; x < width; x++) {
+                    int rgb = pixels[rowStart + x] & 0xffffff;
+                    if (rgb != lastColor) {
+                        lastIndex = paletteIndex(rgb);
+                        if (lastIndex < 0) return -1;
+                        lastColor = rgb;
+                    }
+                    scanlines[p++] = (byte) lastIndex;
+                }
+            }
+            return p;
+        }
+
+        int paletteIndex(int rgb) {
+            int slot = (rgb * 0x9E3779B1) >>> 22;
+            while (true) {
+                if (paletteKeys[slot] == rgb) return paletteValues[slot];
+                if (paletteKeys[slot] == EMPTY_KEY) break;
+                slot = (slot + 1) & (PALETTE_TABLE_SIZE - 1);
+            }
+            if (paletteSize == MAX_PALETTE_SIZE) return -1;
+            int index = paletteSize++;
+            paletteKeys[slot] = rgb;
+            paletteValues[slot] = index;
+            palette[3 * index] = (byte) (rgb >> 16);
+            palette[3 * index + 1] = (byte) (rgb >> 8);
+            palette[3 * index + 2] = (byte) rgb;
+            return index;
+        }
+
+        int fillRgbScanlines(int[] pixels, int width, int height) {
+            int p = 0;
+            for (int y = 0; y < height; y++) {
+                scanlines[p++] = 0;
+                int rowStart = y * width;
+                for (int x = 0; x < width; x++) {
+                    int rgb = pixels[rowStart + x];
+                    scanlines[p++] = (byte) (rgb >> 16);
+                    scanlines[p++] = (byte) (rgb >> 8);
+                    scanlines[p++] = (byte) rgb;
+                }
+            }
+            return p;
+        }
+
+        int compress(int size) {
+            deflater.reset();
+            deflater.setInput(scanlines, 0, size);
+            deflater.finish();
+            int compressedSize = 0;
+            while (!deflater.finished()) {
+                if (compressedSize == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+                }
+                compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+            }
+            return compressedSize;
+        }
+
+        void writeChunk(OutputStream output, String type, byte[] data, int length) throws IOException {
+            byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+            putInt(header, 0, length);
+            System.arraycopy(typeBytes, 0, header, 4, 4);
+            output.write(header, 0, 8);
+            output.write(data, 0, length);
+            crc.reset();
+            crc.update(typeBytes);
+            crc.update(data, 0, length);
+            putInt(header, 0, (int) crc.getValue());
+            output.write(header, 0, 4);
+        }
+
+        static void putInt(byte[] bytes, int offset, int value) {
+            bytes[offset] = (byte) (value >> 24);
+            bytes[offset + 1] = (byte) (value >> 16);
+            bytes[offset + 2] = (byte) (value >> 8);
+            bytes[offset + 3] = (byte) value;
+        }
+    }
+
+    /** Clears the renderer and draws the field's elements and balls. */
+    public static void drawField(Field field, SoftwareRenderer renderer) {
+        renderer.clear(BACKGROUND_COLOR);
+        for (FieldElement element : field.getFieldElementsArray()) {
+            element.draw(renderer);
+        }
+        field.drawBalls(renderer);
+    }
+
+    /**
+     * Simulates numFrames frames of an autoplayed game and writes each one to outputDir as
+     * frame00000.png, frame00001.png, etc. Returns the wall time in nanoseconds.
+     */
+    public static long exportFrames(Map<String, Object> layoutMap, Path outputDir, int numFrames,
+            int width, int height) throws IOException {
+        Files.createDirectories(outputDir);
+        FieldSimulator simulator = new FieldSimulator(layoutMap);
+        Field field = simulator.getField();
+        SoftwareRenderer renderer = new SoftwareRenderer(width, height);
+        renderer.fitLayout(field.getFieldLayout());
+        PngEncoder encoder = new PngEncoder();
+
+        long startNanos = System.nanoTime();
+        field.startGame();
+        field.removeDeadBalls();
+        field.launchBall();
+        for (int frame = 0; frame < numFrames; frame++) {
+            if (frame > 0) simulator.step();
+            drawField(field, renderer);
+            Path path = outputDir.resolve(String.format("frame%05d.png", frame));
+            try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)) {
+                encoder.write(renderer.getPixels(), width, height, output);
+            }
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8);
+        Path outputDir = Paths.get(args[1]);
+        int numFrames = Integer.parseInt(args[2]);
+        int width = (args.length > 3) ? Integer.parseInt(args[3]) : 560;
+        int height = (args.length > 4) ? Integer.parseInt(args[4]) : 810;
+        long nanos = exportFrames(JSONUtils.mapFromJSONString(json), outputDir, numFrames, width, height);
+        System.out.println(String.format("%d frames at %dx%d in %.2fs (%.1f frames/s)",
+                numFrames, width, height, nanos / 1e9, numFrames / (nanos / 1e9)));
+    }
+}
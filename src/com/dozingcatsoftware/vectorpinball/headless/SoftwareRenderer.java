@@ -0,0 +1,258 @@
+package com.dozingcatsoftware.vectorpinball.headless;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import com.dozingcatsoftware.vectorpinball.model.Color;
+import com.dozingcatsoftware.vectorpinball.model.FieldLayout;
+import com.dozingcatsoftware.vectorpinball.model.IFieldRenderer;
+
+/**
+ * IFieldRenderer that rasterizes directly into the int[] pixels of a BufferedImage, without
+ * needing a display or any UI toolkit. Used to make table thumbnails and gameplay frames on
+ * headless machines; see FrameExporter. Lines and circle outlines are one pixel wide and not
+ * antialiased. Colors with alpha below 255 are blended with the existing pixels. The image and
+ * all buffers are reused, so drawing doesn't allocate.
+ */
+public class SoftwareRenderer implements IFieldRenderer {
+
+    final BufferedImage image;
+    final int[] pixels;
+    final int width;
+    final int height;
+
+    // Pixel coordinates are (x - xOffset) * scale, and height - (y - yOffset) * scale.
+    double scale;
+    double xOffset;
+    double yOffset;
+
+    // Reused by fillPolygon for the x coordinates where each scanline crosses an edge.
+    double[] crossings = new double[16];
+
+    public SoftwareRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.scale = 1;
+    }
+
+    /** Scales and offsets the field so that the given world rectangle fills the image, preserving aspect ratio. */
+    public void fitWorldRect(double xmin, double ymin, double xmax, double ymax) {
+        scale = Math.min(width / (xmax - xmin), height / (ymax - ymin));
+        xOffset = xmin;
+        yOffset = ymin;
+    }
+
+    /** Scales the renderer to show the field's layout with a margin, as the editor does. */
+    public void fitLayout(FieldLayout layout) {
+        double margin = 1.5;
+        fitWorldRect(-margin, -margin, layout.getWidth() + margin, layout.getHeight() + margin);
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /** Returns the image's pixels as 0xRRGGBB values, row by row from the top. */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public void clear(Color color) {
+        Arrays.fill(pixels, rgb(color));
+    }
+
+    static int rgb(Color color) {
+        return (color.red << 16) | (color.green << 8) | color.blue;
+    }
+
+    double toPixelX(double x) {
+        return (x - xOffset) * scale;
+    }
+
+    double toPixelY(double y) {
+        return height - (y - yOffset) * scale;
+    }
+
+    void setPixel(int x, int y, int rgb, int alpha) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return;
+        int index = y * width + x;
+        pixels[index] = (alpha >= 255) ? rgb : blend(pixels[index], rgb, alpha);
+    }
+
+    /** Sets pixels x0 through x1 inclusive on row y, which must be within the image. */
+    void fillSpan(int x0, int x1, int y, int rgb, int alpha) {
+        if (x0 < 0) x0 = 0;
+        if (x1 >= width) x1 = width - 1;
+        if (x0 > x1) return;
+        int start = y * width;
+        if (alpha >= 255) {
+            Arrays.fill(pixels, start + x0, start + x1 + 1, rgb);
+        }
+        else {
+            for (int i = start + x0; i <= start + x1; i++) {
+                pixels[i] = blend(pixels[i], rgb, alpha);
+            }
+        }
+    }
+
+    static int blend(int dst, int src, int alpha) {
+        int inverse = 255 - alpha;
+        int r = (((src >> 16) & 0xff) * alpha + ((dst >> 16) & 0xff) * inverse) / 255;
+        int g = (((src >> 8) & 0xff) * alpha + ((dst >> 8) & 0xff) * inverse) / 255;
+        int b = ((src & 0xff) * alpha + (dst & 0xff) * inverse) / 255;
+        return (r << 16) | (g << 8) | b;
+    }
+
+    @Override public void drawLine(double x1, double y1, double x2, double y2, Color color) {
+        int rgb = rgb(color);
+        int alpha = color.alpha;
+        // Bresenham's algorithm; endpoints far outside the image just produce off-image pixels.
+        int px = (int) Math.round(toPixelX(x1));
+        int py = (int) Math.round(toPixelY(y1));
+        int ex = (int) Math.round(toPixelX(x2));
+        int ey = (int) Math.round(toPixelY(y2));
+        if ((px < 0 && ex < 0) || (py < 0 && ey < 0) ||
+                (px >= width && ex >= width) || (py >= height && ey >= height)) {
+            return;
+        }
+        int dx = Math.abs(ex - px);
+        int dy = -Math.abs(ey - py);
+        int sx = (px < ex) ? 1 : -1;
+        int sy = (py < ey) ? 1 : -1;
+        int error = dx + dy;
+        while (true) {
+            setPixel(px, py, rgb, alpha);
+            if (px == ex && py == ey) break;
+            int e2 = 2 * error;
+            if (e2 >= dy) {
+                error += dy;
+                px += sx;
+            }
+            if (e2 <= dx) {
+                error += dx;
+                py += sy;
+            }
+        }
+    }
+    @Override public void drawLine(float x1, float y1, float x2, float y2, Color color) {
+        drawLine((double)x1, y1, x2, y2, color);
+    }
+
+    @Override public void fillCircle(double cx, double cy, double radius, Color color) {
+        int rgb = rgb(color);
+        double px = toPixelX(cx);
+        double py = toPixelY(cy);
+        double r = radius * scale;
+        int ymin = Math.max(0, (int) Math.ceil(py - r - 0.5));
+        int ymax = Math.min(height - 1, (int) Math.floor(py + r - 0.5));
+        for (int y = ymin; y <= ymax; y++) {
+            // Fill pixels whose centers are inside the circle.
+            double dy = y + 0.5 - py;
+            double halfWidth = Math.sqrt(r * r - dy * dy);
+            fillSpan((int) Math.ceil(px - halfWidth - 0.5), (int) Math.floor(px + halfWidth - 0.5), y, rgb, color.alpha);
+        }
+    }
+    @Override public void fillCircle(float cx, float cy, float radius, Color color) {
+        fillCircle((double)cx, (double)cy, radius, color);
+    }
+
+    @Override public void frameCircle(double cx, double cy, double radius, Color color) {
+        int rgb = rgb(color);
+        int alpha = color.alpha;
+        int px = (int) Math.round(toPixelX(cx));
+        int py = (int) Math.round(toPixelY(cy));
+        int r = (int) Math.round(radius * scale);
+        if (px + r < 0 || py + r < 0 || px - r >= width || py - r >= height) return;
+        // Midpoint circle algorithm, drawing the eight symmetric octants.
+        int x = r;
+        int y = 0;
+        int error = 1 - r;
+        while (x >= y) {
+            setPixel(px + x, py + y, rgb, alpha);
+            setPixel(px - x, py + y, rgb, alpha);
+            if (y != 0) {
+                setPixel(px + x, py - y, rgb, alpha);
+                setPixel(px - x, py - y, rgb, alpha);
+            }
+            if (x != y) {
+                setPixel(px + y, py + x, rgb, alpha);
+                setPixel(px + y, py - x, rgb, alpha);
+                if (y != 0) {
+                    setPixel(px - y, py + x, rgb, alpha);
+                    setPixel(px - y, py - x, rgb, alpha);
+                }
+            }
+            y++;
+            if (error < 0) {
+                error += 2 * y + 1;
+            }
+            else {
+                x--;
+                error += 2 * (y - x) + 1;
+            }
+        }
+    }
+    @Override public void frameCircle(float cx, float cy, float radius, Color color) {
+        frameCircle((double)cx, (double)cy, radius, color);
+    }
+
+    @Override public void fillPolygon(double[] xPoints, double[] yPoints, Color color) {
+        int n = xPoints.length;
+        if (n < 3) return;
+        int rgb = rgb(color);
+        double minY = Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            double y = toPixelY(yPoints[i]);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        if (crossings.length < n) crossings = new double[n];
+        int ystart = Math.max(0, (int) Math.ceil(minY - 0.5));
+        int yend = Math.min(height - 1, (int) Math.floor(maxY - 0.5));
+        // Even-odd scanline fill, sampling at pixel centers.
+        for (int y = ystart; y <= yend; y++) {
+            double sampleY = y + 0.5;
+            int count = 0;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                double yi = toPixelY(yPoints[i]);
+                double yj = toPixelY(yPoints[j]);
+                if ((yi <= sampleY) != (yj <= sampleY)) {
+                    double xi = toPixelX(xPoints[i]);
+                    double xj = toPixelX(xPoints[j]);
+                    crossings[count++] = xi + (sampleY - yi) / (yj - yi) * (xj - xi);
+                }
+            }
+            Arrays.sort(crossings, 0, count);
+            for (int k = 0; k + 1 < count; k += 2) {
+                fillSpan((int) Math.ceil(crossings[k] - 0.5), (int) Math.floor(crossings[k + 1] - 0.5), y, rgb, color.alpha);
+            }
+        }
+    }
+
+    @Override public void doDraw() {
+        // Nothing to do, the image is updated by each drawing call.
+    }
+
+    @Override public int getWidth() {
+        return width;
+    }
+
+    @Override public int getHeight() {
+        return height;
+    }
+
+    @Override public double getRelativeScale() {
+        return 1;
+    }
+
+    @Override public void setDebugMessage(String debugMessage) {
+    }
+
+    @Override public boolean canDraw() {
+        return true;
+    }
+}
@@ -0,0 +1,148 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
+import com.dozingcatsoftware.vectorpinball.elements.FlipperElement;
+
+/**
+ * Chooses how many Box2D world steps Field.tick performs, and how many velocity and position
+ * iterations each step uses, from how fast the balls and flippers are moving. The number of steps
+ * is the smallest that keeps the distance the fastest ball or flipper tip travels in one step
+ * below a fraction of the ball radius plus half the thinnest wall, so fast shots don't pass
+ * through walls while slow or resting balls use fewer steps. Enabled with
+ * Field.setAdaptiveStepping; counts of the steps chosen are kept in a Metrics object.
+ */
+public class AdaptiveStepper {
+
+    static final int MIN_STEPS = 2;
+    static final int MAX_STEPS = 16;
+    // Fraction of (ball radius + half wall thickness) that anything can move in one step.
+    static final float MAX_TRAVEL_FRACTION = 0.5f;
+    // Iterations when at least as many steps as requested are needed, which are what Field.tick
+    // has always used, and Box2D's recommended iterations for slower movement.
+    static final int FAST_VELOCITY_ITERATIONS = 10;
+    static final int FAST_POSITION_ITERATIONS = 10;
+    static final int SLOW_VELOCITY_ITERATIONS = 8;
+    static final int SLOW_POSITION_ITERATIONS = 3;
+
+    /** Counts of world steps chosen by an AdaptiveStepper. */
+    public static class Metrics {
+        public long ticks;
+        public long worldSteps;
+        // Steps that would have been taken with the number of iterations passed to Field.tick.
+        public long requestedWorldSteps;
+        // ticksByStepCount[n] is the number of ticks that used n world steps.
+        public final long[] ticksByStepCount = new long[MAX_STEPS + 1];
+
+        public void reset() {
+            ticks = worldSteps = requestedWorldSteps = 0;
+            Arrays.fill(ticksByStepCount, 0);
+        }
+
+        public double averageStepsPerTick() {
+            return (ticks > 0) ? ((double) worldSteps) / ticks : 0;
+        }
+
+        /** Returns the fraction of requested world steps that weren't needed. Negative if more were used. */
+        public double fractionOfStepsSaved() {
+            return (requestedWorldSteps > 0) ? 1 - ((double) worldSteps) / requestedWorldSteps : 0;
+        }
+
+        @Override public String toString() {
+            StringBuilder buffer = new StringBuilder();
+            buffer.append(String.format("ticks: %d steps/tick: %.2f saved: %.1f%% histogram:",
+                    ticks, averageStepsPerTick(), 100 * fractionOfStepsSaved()));
+            for (int i=0; i<ticksByStepCount.length; i++) {
+                if (ticksByStepCount[i] > 0) {
+                    buffer.append(" ").append(i).append("=").append(ticksByStepCount[i]);
+                }
+            }
+            return buffer.toString();
+        }
+    }
+
+    Metrics metrics = new Metrics();
+    float maxTravelPerStep;
+
+    // Results of the most recent call to chooseSteps.
+    int steps;
+    int velocityIterations;
+    int positionIterations;
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /** Computes the maximum travel per step from the layout. Called from Field.resetForLevel. */
+    void resetForLayout(FieldLayout layout) {
+        float minWallThickness = Float.MAX_VALUE;
+        Vector2 v0 = new Vector2();
+        Vector2 v1 = new Vector2();
+        for (FieldElement element : layout.getFieldElements()) {
+            if (element instanceof FlipperElement) continue;
+            List<Body> bodies = element.getBodies();
+            for (int i=0; i<bodies.size(); i++) {
+                for (Fixture fixture : bodies.get(i).getFixtureList()) {
+                    if (fixture.getType() == Shape.Type.Chain) {
+                        // Wall paths and arcs are chains of edges, which are as thick as their skin radius.
+                        minWallThickness = Math.min(minWallThickness, 2 * fixture.getShape().getRadius());
+                        continue;
+                    }
+                    if (fixture.getType() != Shape.Type.Polygon) continue;
+                    // Walls are boxes, whose thickness is their shortest edge.
+                    PolygonShape shape = (PolygonShape) fixture.getShape();
+                    int count = shape.getVertexCount();
+                    for (int j=0; j<count; j++) {
+                        shape.getVertex(j, v0);
+                        shape.getVertex((j + 1) % count, v1);
+                        minWallThickness = Math.min(minWallThickness, v0.dst(v1));
+                    }
+                }
+            }
+        }
+        if (minWallThickness == Float.MAX_VALUE) minWallThickness = 0;
+        maxTravelPerStep = MAX_TRAVEL_FRACTION * (layout.getBallRadius() + minWallThickness / 2);
+    }
+
+    /**
+     * Sets steps, velocityIterations, and positionIterations for a tick of the given duration,
+     * and updates the metrics.
+     */
+    void chooseSteps(Field field, long nanos, int requestedSteps) {
+        float maxSpeed = 0;
+        List<Ball> balls = field.getBalls();
+        for (int i=0; i<balls.size(); i++) {
+            maxSpeed = Math.max(maxSpeed, balls.get(i).getLinearVelocity().len());
+        }
+        List<FlipperElement> flippers = field.getFlipperElements();
+        for (int i=0; i<flippers.size(); i++) {
+            FlipperElement flipper = flippers.get(i);
+            float tipSpeed = Math.abs(flipper.getJoint().getJointSpeed() * flipper.getFlipperLength());
+            maxSpeed = Math.max(maxSpeed, tipSpeed);
+        }
+
+        float travel = maxSpeed * (nanos / 1e9f);
+        int needed = (maxTravelPerStep > 0) ? (int) Math.ceil(travel / maxTravelPerStep) : MAX_STEPS;
+        steps = Math.max(MIN_STEPS, Math.min(MAX_STEPS, needed));
+        if (steps >= requestedSteps) {
+            velocityIterations = FAST_VELOCITY_ITERATIONS;
+            positionIterations = FAST_POSITION_ITERATIONS;
+        }
+        else {
+            velocityIterations = SLOW_VELOCITY_ITERATIONS;
+            positionIterations = SLOW_POSITION_ITERATIONS;
+        }
+
+        metrics.ticks++;
+        metrics.worldSteps += steps;
+        metrics.requestedWorldSteps += requestedSteps;
+        metrics.ticksByStepCount[steps]++;
+    }
+}
@@ -32,7 +32,10 @@ public class Ball {
             ballBody.getFixtureList().get(0).setDensity((0.5f*0.5f) / (radius*radius));
             ballBody.resetMassData();
         }
-        return new Ball(ballBody, primaryColor, secondaryColor);
+        Ball ball = new Ball(ballBody, primaryColor, secondaryColor);
+        // Allows Field to find the ball for a body in contact callbacks without searching.
+        ballBody.setUserData(ball);
+        return ball;
     }
 
     public void draw(IFieldRenderer renderer) {
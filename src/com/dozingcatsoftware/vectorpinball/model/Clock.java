@@ -23,4 +23,30 @@ public interface Clock {
             return System.nanoTime();
         }
     }
+
+    /**
+     * Clock whose time only changes when advanced explicitly, so that headless simulations
+     * behave the same regardless of how fast they run.
+     */
+    public static class ManualClock implements Clock {
+        private long nanos;
+
+        public ManualClock() {}
+
+        public ManualClock(long startNanos) {
+            this.nanos = startNanos;
+        }
+
+        public void advanceNanos(long delta) {
+            nanos += delta;
+        }
+
+        @Override public long currentTimeMillis() {
+            return nanos / 1000000;
+        }
+
+        @Override public long nanoTime() {
+            return nanos;
+        }
+    }
 }
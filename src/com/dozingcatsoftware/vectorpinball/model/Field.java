@@ -1,11 +1,12 @@
 package com.dozingcatsoftware.vectorpinball.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
 
@@ -20,41 +21,90 @@ import com.badlogic.gdx.physics.box2d.World;
 import com.dozingcatsoftware.vectorpinball.elements.DropTargetGroupElement;
 import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
 import com.dozingcatsoftware.vectorpinball.elements.FlipperElement;
+import com.dozingcatsoftware.vectorpinball.elements.ProximityGrid;
 import com.dozingcatsoftware.vectorpinball.elements.RolloverGroupElement;
 import com.dozingcatsoftware.vectorpinball.elements.SensorElement;
 import com.dozingcatsoftware.vectorpinball.groovy.GroovyFieldDelegateBuilder;
+import com.dozingcatsoftware.vectorpinball.util.NumberedStrings;
 
 public class Field implements ContactListener {
 
     FieldLayout layout;
+    // Obtained from worldPool in resetForLevel, and released there or by dispose.
     World world;
+    WorldPool worldPool = WorldPool.UNPOOLED;
 
     Set<Body> layoutBodies;
     List<Ball> balls;
     Set<Body> ballsAtTargets;
 
-    // Allow access to model objects from Box2d bodies.
+    // Allow access to model objects from Box2d bodies. The user data of each element body is also
+    // set to its FieldElement, and ball bodies to their Ball, so that contacts can be resolved
+    // without a lookup.
     Map<Body, FieldElement> bodyToFieldElement;
     Map<String, FieldElement> fieldElementsByID;
     Map<String, List<FieldElement>> elementsByGroupID = new HashMap<String, List<FieldElement>>();
     // Store FieldElements in arrays for optimized iteration.
     FieldElement[] fieldElementsArray;
     FieldElement[] fieldElementsToTick;
+    // Elements drawn into the cached static layer of render snapshots, and all others.
+    FieldElement[] staticallyDrawnElements;
+    FieldElement[] dynamicallyDrawnElements;
+    RenderSnapshot staticLayer;
+    long staticLayerVersion;
+
+    // The map passed to the last resetForLevel, and the initial transforms (x, y, and angle for
+    // each body) and active flags of the element bodies it created, so that restartLevel can
+    // reuse them if the layout hasn't changed.
+    Map<String, Object> layoutMap;
+    Body[] elementBodies;
+    float[] initialBodyTransforms;
+    boolean[] initialBodyActive;
 
     Random RAND = new Random();
+    // Seeds RAND and the layout's random generator in resetForLevel. Chosen randomly for each
+    // reset unless set with setRandomSeed, so that replays can reproduce a game.
+    long randomSeed;
+    boolean hasFixedRandomSeed;
+
+    // If set, records the seed, tick timings and inputs so that the game can be replayed. Input
+    // isn't recorded while suppressReplayRecording is true, which is the case during tick() and
+    // while running an input method, so that calls they make to other input methods aren't
+    // recorded as separate inputs.
+    ReplayRecorder replayRecorder;
+    boolean suppressReplayRecording;
+
+    // Notified of input from outside of tick(), so that an idle FieldDriver can resume ticking.
+    Runnable wakeupListener;
 
     long gameTime;
-    PriorityQueue<ScheduledAction> scheduledActions;
+    TimerWheel scheduledActions = new TimerWheel();
+    RenderSnapshotBuffer renderSnapshots = new RenderSnapshotBuffer();
+    InputQueue inputQueue = new InputQueue();
 
     Delegate delegate;
 
     GameState gameState = new GameState();
+    int lostBallCount;
     GameMessage gameMessage;
+    // Reused by showGameMessage; gameMessage is either this or null.
+    final GameMessage reusableGameMessage = new GameMessage();
+
+    static final NumberedStrings BALL_NUMBER_MESSAGES = new NumberedStrings("Ball ", "", 99);
+    // Shown by showNextBallMessage, which doBallLost schedules.
+    String nextBallMessage;
+    long nextBallMessageHandle;
+    final Runnable showNextBallMessage = new Runnable() {
+        @Override public void run() {
+            showGameMessage(nextBallMessage, 1500, false); // no sound effect
+        }
+    };
 
     // Used in checkForStuckBall() to see if the ball hasn't moved recently.
     float lastBallPositionX;
     float lastBallPositionY;
     long nanosSinceBallMoved = -1;
+    Vector2 stuckBallImpulse = new Vector2(); // avoid allocation when bumping
     // Duration after which the ball is considered stuck if it hasn't moved significantly,
     // if it's a single ball and no flippers are active. Normally the time ratio is around 2,
     // so this will be about 5 real-world seconds.
@@ -63,6 +113,24 @@ public class Field implements ContactListener {
     AudioPlayer audioPlayer = AudioPlayer.NoOpPlayer.getInstance();
     Clock clock = Clock.SystemClock.getInstance();
 
+    // If set, tick() records how long each of its phases takes. Used for benchmarking.
+    TickTimings tickTimings;
+
+    // Iterations passed to World.step. Chosen by adaptiveStepper for each tick if it's set.
+    static final int DEFAULT_VELOCITY_ITERATIONS = 10;
+    static final int DEFAULT_POSITION_ITERATIONS = 10;
+    int velocityIterations = DEFAULT_VELOCITY_ITERATIONS;
+    int positionIterations = DEFAULT_POSITION_ITERATIONS;
+    AdaptiveStepper adaptiveStepper;
+
+    // Finds balls in rollovers and sensors each tick. Can be disabled to compare with the
+    // elements checking every ball themselves.
+    ProximityGrid proximityGrid;
+    boolean useProximityGrid = true;
+    // Wall paths and arcs are chain shapes unless this is cleared before resetForLevel, which
+    // FieldBenchmark does to compare with a separate body for each segment.
+    boolean useChainShapeWalls = true;
+
     // Interface to allow custom behavior for various game events.
     public static interface Delegate {
         public void gameStarted(Field field);
@@ -86,23 +154,57 @@ public class Field implements ContactListener {
         public boolean isFieldActive(Field field);
     }
 
-    // Helper class to represent actions scheduled in the future.
-    static class ScheduledAction implements Comparable<ScheduledAction> {
-        Long actionTime;
-        Runnable action;
+    /**
+     * Accumulates the time spent in each phase of tick(), when passed to setTickTimings.
+     * "contacts" includes element handleCollision calls and delegate processCollision calls.
+     */
+    public static class TickTimings {
+        public long ticks;
+        public long worldStepNanos;
+        public long contactNanos;
+        public long elementTickNanos;
+        public long delegateTickNanos;
+        public long otherNanos;
+
+        public void reset() {
+            ticks = worldStepNanos = contactNanos = elementTickNanos = delegateTickNanos = otherNanos = 0;
+        }
 
-        @Override public int compareTo(ScheduledAction another) {
-            // Sort by action time so these objects can be inserted into a PriorityQueue.
-            return actionTime.compareTo(another.actionTime);
+        public long totalNanos() {
+            return worldStepNanos + contactNanos + elementTickNanos + delegateTickNanos + otherNanos;
         }
     }
 
     World createWorld() {
         Vector2 gravity = new Vector2(0.0f, -1.0f);
         boolean doSleep = true;
-        World newWorld = new World(gravity, doSleep);
-        newWorld.setContactListener(this);
-        return newWorld;
+        return worldPool.obtain(gravity, doSleep, this);
+    }
+
+    /**
+     * Releases the field's Box2D world to its pool, which frees its native bodies, fixtures, and
+     * joints or keeps it for reuse. The field can't be ticked or drawn again until resetForLevel is
+     * called. Must not be called while the field is being ticked; stop its FieldDriver first.
+     */
+    public void dispose() {
+        if (world != null) {
+            worldPool.release(world);
+            world = null;
+        }
+        balls = new ArrayList<Ball>();
+        layoutMap = null;
+        elementBodies = null;
+    }
+
+    public WorldPool getWorldPool() {
+        return worldPool;
+    }
+    /**
+     * Sets the pool that Box2D worlds are obtained from in resetForLevel and released to when
+     * they're replaced or the field is disposed. Defaults to WorldPool.UNPOOLED.
+     */
+    public void setWorldPool(WorldPool pool) {
+        worldPool = (pool != null) ? pool : WorldPool.UNPOOLED;
     }
 
     Delegate createDelegate() {
@@ -130,45 +232,338 @@ public class Field implements ContactListener {
 
     /**
      * Creates Box2D world, reads layout definitions for the given level, and initializes the game
-     * to the starting state.
+     * to the starting state. The previous world, if any, is released to the world pool.
      */
     public void resetForLevel(Map<String, Object> layoutMap) {
+        dispose();
         world = createWorld();
 
-        this.layout = FieldLayout.layoutForLevel(layoutMap, world);
+        if (!hasFixedRandomSeed) {
+            randomSeed = new Random().nextLong();
+        }
+        RAND = new Random(randomSeed);
+        this.layout = FieldLayout.layoutForLevel(layoutMap, world, useChainShapeWalls);
+        layout.setRandomSeed(RAND.nextLong());
         world.setGravity(new Vector2(0.0f, -layout.getGravity()));
         balls = new ArrayList<Ball>();
         ballsAtTargets = new HashSet<Body>();
 
-        scheduledActions = new PriorityQueue<ScheduledAction>();
+        scheduledActions.clear();
         gameTime = 0;
+        nanosSinceBallMoved = -1;
 
-        // Map bodies and IDs to FieldElements, and get elements on whom tick() has to be called.
+        // Map bodies and IDs to FieldElements.
         bodyToFieldElement = new HashMap<Body, FieldElement>();
         fieldElementsByID = new HashMap<String, FieldElement>();
-        List<FieldElement> tickElements = new ArrayList<FieldElement>();
-
         for(FieldElement element : layout.getFieldElements()) {
-            if (element.getElementId()!=null) {
-                fieldElementsByID.put(element.getElementId(), element);
-            }
-            for(Body body : element.getBodies()) {
-                bodyToFieldElement.put(body, element);
-            }
+            addElementMappings(element);
+        }
+        updateElementArrays();
+
+        delegate = createDelegate();
+
+        if (replayRecorder != null) {
+            replayRecorder.begin(randomSeed, layoutMap);
+        }
+        this.layoutMap = layoutMap;
+        recordInitialBodyStates(Collections.<Body, Integer>emptyMap());
+    }
+
+    void addElementMappings(FieldElement element) {
+        if (element.getElementId()!=null) {
+            fieldElementsByID.put(element.getElementId(), element);
+        }
+        for(Body body : element.getBodies()) {
+            bodyToFieldElement.put(body, element);
+            body.setUserData(element);
+        }
+    }
+
+    void removeElementMappings(FieldElement element) {
+        if (element.getElementId()!=null) {
+            fieldElementsByID.remove(element.getElementId(), element);
+        }
+        for(Body body : element.getBodies()) {
+            bodyToFieldElement.remove(body);
+        }
+    }
+
+    /**
+     * Fills the element arrays used for iteration from the layout's elements, including the
+     * elements on whom tick() has to be called, and rebuilds the per-layout helpers.
+     */
+    void updateElementArrays() {
+        List<FieldElement> tickElements = new ArrayList<FieldElement>();
+        List<FieldElement> staticElements = new ArrayList<FieldElement>();
+        List<FieldElement> dynamicElements = new ArrayList<FieldElement>();
+        for (FieldElement element : layout.getFieldElements()) {
             if (element.shouldCallTick()) {
                 tickElements.add(element);
             }
+            (element.isDrawnStatically() ? staticElements : dynamicElements).add(element);
         }
         fieldElementsToTick = tickElements.toArray(new FieldElement[0]);
         fieldElementsArray = layout.getFieldElements().toArray(new FieldElement[0]);
+        staticallyDrawnElements = staticElements.toArray(new FieldElement[0]);
+        dynamicallyDrawnElements = dynamicElements.toArray(new FieldElement[0]);
+        staticLayer = null;
+        proximityGrid = useProximityGrid ? new ProximityGrid(layout.getFieldElements()) : null;
+        if (adaptiveStepper != null) {
+            adaptiveStepper.resetForLayout(layout);
+        }
+    }
+
+    /**
+     * Records the transforms and active flags that restartLevel restores. Bodies that are in
+     * previousIndexes keep the state at that index in the previous arrays; others are new, and
+     * their current state is their initial state.
+     */
+    void recordInitialBodyStates(Map<Body, Integer> previousIndexes) {
+        Body[] bodies = bodyToFieldElement.keySet().toArray(new Body[0]);
+        float[] transforms = new float[3 * bodies.length];
+        boolean[] active = new boolean[bodies.length];
+        for (int i=0; i<bodies.length; i++) {
+            Body body = bodies[i];
+            Integer previous = previousIndexes.get(body);
+            if (previous != null) {
+                System.arraycopy(initialBodyTransforms, 3 * previous, transforms, 3 * i, 3);
+                active[i] = initialBodyActive[previous];
+            }
+            else {
+                transforms[3*i] = body.getPosition().x;
+                transforms[3*i + 1] = body.getPosition().y;
+                transforms[3*i + 2] = body.getAngle();
+                active[i] = body.isActive();
+            }
+        }
+        elementBodies = bodies;
+        initialBodyTransforms = transforms;
+        initialBodyActive = active;
+    }
 
+    /**
+     * Applies edits to the layout of a game in progress, keeping the balls in play. newLayoutMap
+     * is compared with the map most recently passed to resetForLevel or applyLayoutChanges:
+     * elements whose parameters are unchanged are kept along with their state and bodies, and
+     * only elements that were added, removed, or changed have their bodies destroyed or created.
+     * Changed elements are new FieldElement objects, so delegates that keep references to
+     * elements may not see them until the next game. Returns false without changing anything if
+     * properties other than the elements changed (for example the script or gravity), or if
+     * there is a replay recorder, since replays can't represent layout changes; the new layout
+     * then takes effect with the next restartLevel or resetForLevel. As with restartLevel, the map
+     * must not be modified afterward.
+     */
+    public boolean applyLayoutChanges(Map<String, Object> newLayoutMap) {
+        if (world == null || replayRecorder != null || this.layoutMap == null ||
+                !FieldLayout.hasSamePropertiesExceptElements(this.layoutMap, newLayoutMap)) {
+            return false;
+        }
+        // Box2D reuses the objects of destroyed bodies, so indexes have to be by identity.
+        Map<Body, Integer> previousIndexes = new IdentityHashMap<Body, Integer>();
+        for (int i=0; i<elementBodies.length; i++) {
+            previousIndexes.put(elementBodies[i], i);
+        }
+        List<FieldElement> addedElements = new ArrayList<FieldElement>();
+        List<FieldElement> removedElements = new ArrayList<FieldElement>();
+        layout.updateElements(newLayoutMap, world, addedElements, removedElements);
+        // Removals first, so that a changed element's ID maps to its replacement.
+        for (FieldElement element : removedElements) {
+            removeElementMappings(element);
+            for (Body body : element.getBodies()) {
+                previousIndexes.remove(body);
+            }
+            element.destroyBodies(world);
+        }
+        for (FieldElement element : addedElements) {
+            addElementMappings(element);
+        }
+        if (!addedElements.isEmpty() || !removedElements.isEmpty()) {
+            updateElementArrays();
+            recordInitialBodyStates(previousIndexes);
+        }
+        this.layoutMap = newLayoutMap;
+        return true;
+    }
+
+    /**
+     * Prepares the field for a new game with the given layout. If the layout is equal to the one
+     * most recently passed to resetForLevel, the existing Box2D world and field elements are kept:
+     * balls are removed, element bodies are moved back to their initial positions and activated
+     * or deactivated as they were initially, and each element's resetForNewGame method restores
+     * its other state. This avoids recreating every element and body and reinitializing the
+     * delegate, and is equivalent to calling resetForLevel except that the same FieldElement
+     * objects are used. Otherwise calls resetForLevel. The map must not be modified after being
+     * passed to either method. Returns true if the existing world and elements were reused.
+     * <p>
+     * Games in a reused world play the same as in a new one, but aren't always identical to the
+     * last bit: destroying the previous game's balls changes the order in which the Box2D
+     * broadphase reports contacts. Replays are played back in new worlds, so this always calls
+     * resetForLevel if there is a replay recorder.
+     */
+    public boolean restartLevel(Map<String, Object> layoutMap) {
+        if (world == null || replayRecorder != null ||
+                this.layoutMap == null || !this.layoutMap.equals(layoutMap)) {
+            resetForLevel(layoutMap);
+            return false;
+        }
+        for (int i=0; i<balls.size(); i++) {
+            world.destroyBody(balls.get(i).getBody());
+        }
+        balls = new ArrayList<Ball>();
+        ballsAtTargets.clear();
+
+        if (!hasFixedRandomSeed) {
+            randomSeed = new Random().nextLong();
+        }
+        RAND = new Random(randomSeed);
+        layout.setRandomSeed(RAND.nextLong());
+
+        scheduledActions.clear();
+        gameTime = 0;
+        nanosSinceBallMoved = -1;
+        gameMessage = null;
+
+        for (int i=0; i<elementBodies.length; i++) {
+            Body body = elementBodies[i];
+            body.setTransform(initialBodyTransforms[3*i], initialBodyTransforms[3*i + 1], initialBodyTransforms[3*i + 2]);
+            body.setLinearVelocity(0, 0);
+            body.setAngularVelocity(0);
+            body.setActive(initialBodyActive[i]);
+            body.setAwake(true);
+        }
+        for (FieldElement element : fieldElementsArray) {
+            element.resetForNewGame();
+        }
+        staticLayer = null;
+        // A new grid attaches itself to the rollovers and sensors and clears their hit state.
+        proximityGrid = useProximityGrid ? new ProximityGrid(layout.getFieldElements()) : null;
+        if (adaptiveStepper != null) {
+            adaptiveStepper.resetForLayout(layout);
+        }
+
+        // Scripts are only compiled once, so this just runs the script to get a new delegate.
         delegate = createDelegate();
+        return true;
+    }
+
+    /**
+     * Sets the seed used for random behavior by subsequent calls to resetForLevel. Resetting with
+     * the same seed and layout and then making the same calls to tick and the input methods
+     * produces the same game.
+     */
+    public void setRandomSeed(long seed) {
+        randomSeed = seed;
+        hasFixedRandomSeed = true;
+    }
+
+    /** Returns the seed used by the most recent call to resetForLevel. */
+    public long getRandomSeed() {
+        return randomSeed;
+    }
+
+    /** Sets the recorder for replays of subsequent games; takes effect at the next resetForLevel. */
+    public void setReplayRecorder(ReplayRecorder recorder) {
+        this.replayRecorder = recorder;
+    }
+
+    public ReplayRecorder getReplayRecorder() {
+        return replayRecorder;
+    }
+
+    /** Sets a listener to be called by requestWakeup. FieldDriver uses this to stop idling. */
+    public void setWakeupListener(Runnable listener) {
+        this.wakeupListener = listener;
+    }
+
+    /**
+     * Wakes the FieldDriver if it's idle. Called automatically by input methods; delegates can
+     * call this if isFieldActive may have changed for a reason other than a tick or input.
+     */
+    public void requestWakeup() {
+        Runnable listener = wakeupListener;
+        if (listener != null) listener.run();
+    }
+
+    /**
+     * Records an input to the replay recorder if there is one and recording isn't suppressed,
+     * and suppresses recording until endInput is called with the returned value. Input from
+     * outside of tick() also wakes the FieldDriver, since it may make the field active.
+     */
+    boolean beginInput(int eventType) {
+        boolean wasSuppressed = suppressReplayRecording;
+        if (!wasSuppressed) {
+            if (replayRecorder != null) replayRecorder.recordInput(eventType);
+            requestWakeup();
+        }
+        suppressReplayRecording = true;
+        return wasSuppressed;
+    }
+
+    void endInput(boolean wasSuppressed) {
+        suppressReplayRecording = wasSuppressed;
     }
 
     public void startGame() {
+        boolean wasSuppressed = beginInput(Replay.START_GAME);
         gameState.setTotalBalls(layout.getNumberOfBalls());
         gameState.startNewGame();
         getDelegate().gameStarted(this);
+        endInput(wasSuppressed);
+    }
+
+    /**
+     * Adds an InputQueue command to be applied at the start of the next tick, and wakes the
+     * FieldDriver if it's idle. Unlike the input methods this doesn't require holding the field's
+     * lock, so UI threads can call it while the game thread is ticking.
+     */
+    public void queueInput(int command) {
+        inputQueue.add(command);
+        requestWakeup();
+    }
+
+    public InputQueue getInputQueue() {
+        return inputQueue;
+    }
+
+    /**
+     * Applies queued input now instead of at the start of the next tick. FieldDriver calls this
+     * before checking hasActiveElements, so that a ball launched while the field is idle isn't
+     * advanced by the whole idle time in one tick. Must be called while holding the field's lock.
+     */
+    void applyQueuedInput() {
+        inputQueue.drain(this);
+    }
+
+    /** Calls the input method corresponding to an InputQueue command. */
+    void applyInput(int command) {
+        switch (command) {
+            case InputQueue.LEFT_FLIPPERS_ENGAGED:
+            case InputQueue.LEFT_FLIPPERS_RELEASED:
+                setLeftFlippersEngaged(command == InputQueue.LEFT_FLIPPERS_ENGAGED);
+                break;
+            case InputQueue.RIGHT_FLIPPERS_ENGAGED:
+            case InputQueue.RIGHT_FLIPPERS_RELEASED:
+                setRightFlippersEngaged(command == InputQueue.RIGHT_FLIPPERS_ENGAGED);
+                break;
+            case InputQueue.ALL_FLIPPERS_ENGAGED:
+            case InputQueue.ALL_FLIPPERS_RELEASED:
+                setAllFlippersEngaged(command == InputQueue.ALL_FLIPPERS_ENGAGED);
+                break;
+            case InputQueue.LAUNCH_BALL:
+                launchBall();
+                break;
+            case InputQueue.LAUNCH_BALL_IF_NONE:
+                if (balls.isEmpty()) launchBall();
+                break;
+            case InputQueue.REMOVE_DEAD_BALLS:
+                removeDeadBalls();
+                break;
+            case InputQueue.START_GAME:
+                startGame();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown input command: " + command);
+        }
     }
 
     /**
@@ -186,25 +581,99 @@ public class Field implements ContactListener {
      * and performs scheduled actions.
      */
     void tick(long nanos, int iters) {
+        // Queued input is applied before the tick, and recorded like direct calls to input methods.
+        inputQueue.drain(this);
+        boolean wasSuppressed = suppressReplayRecording;
+        suppressReplayRecording = true;
+        if (replayRecorder != null) {
+            replayRecorder.recordTick(nanos, iters, adaptiveStepper != null);
+        }
+        if (adaptiveStepper != null) {
+            adaptiveStepper.chooseSteps(this, nanos, iters);
+            iters = adaptiveStepper.steps;
+            velocityIterations = adaptiveStepper.velocityIterations;
+            positionIterations = adaptiveStepper.positionIterations;
+        }
+        advance(nanos, iters);
+        suppressReplayRecording = wasSuppressed;
+    }
+
+    /**
+     * Enables or disables adaptive stepping. When enabled, the number of world steps in each tick
+     * is chosen by an AdaptiveStepper based on ball and flipper speeds, instead of using the
+     * iteration count passed to tick.
+     */
+    public void setAdaptiveStepping(boolean enabled) {
+        if (enabled == (adaptiveStepper != null)) return;
+        if (enabled) {
+            adaptiveStepper = new AdaptiveStepper();
+            if (layout != null) adaptiveStepper.resetForLayout(layout);
+        }
+        else {
+            adaptiveStepper = null;
+            velocityIterations = DEFAULT_VELOCITY_ITERATIONS;
+            positionIterations = DEFAULT_POSITION_ITERATIONS;
+        }
+    }
+
+    public boolean isAdaptiveStepping() {
+        return adaptiveStepper != null;
+    }
+
+    /** Returns the counts of world steps chosen by adaptive stepping, or null if it's disabled. */
+    public AdaptiveStepper.Metrics getAdaptiveSteppingMetrics() {
+        return (adaptiveStepper != null) ? adaptiveStepper.getMetrics() : null;
+    }
+
+    /**
+     * Advances the game as described for tick(). If tickTimings is set, adds the time taken by
+     * each phase to it; otherwise System.nanoTime is never called.
+     */
+    void advance(long nanos, int iters) {
+        TickTimings timings = tickTimings;
+        boolean timingsEnabled = (timings != null);
         float dt = (nanos/1e9f) / iters;
 
         for(int i=0; i<iters; i++) {
             clearBallContacts();
-            world.step(dt, 10, 10);
+            long t0 = timingsEnabled ? System.nanoTime() : 0;
+            world.step(dt, velocityIterations, positionIterations);
+            long t1 = timingsEnabled ? System.nanoTime() : 0;
             processBallContacts();
+            if (timingsEnabled) {
+                long t2 = System.nanoTime();
+                timings.worldStepNanos += t1 - t0;
+                timings.contactNanos += t2 - t1;
+            }
         }
 
+        long t0 = timingsEnabled ? System.nanoTime() : 0;
         gameTime += nanos;
         processElementTicks();
+        long t1 = timingsEnabled ? System.nanoTime() : 0;
         processScheduledActions();
         processGameMessages();
         checkForStuckBall(nanos);
+        long t2 = timingsEnabled ? System.nanoTime() : 0;
 
         getDelegate().tick(this, nanos);
+        if (timingsEnabled) {
+            long t3 = System.nanoTime();
+            timings.elementTickNanos += t1 - t0;
+            timings.otherNanos += t2 - t1;
+            timings.delegateTickNanos += t3 - t2;
+            timings.ticks++;
+        }
     }
 
-    /** Calls the tick() method of every FieldElement in the layout. */
+    /**
+     * Calls the tick() method of every FieldElement in the layout, after updating the proximity
+     * grid that rollovers and sensors use to find balls.
+     */
     void processElementTicks() {
+        if (proximityGrid != null) {
+            proximityGrid.update(balls);
+        }
         int size = fieldElementsToTick.length;
         for(int i=0; i<size; i++) {
             fieldElementsToTick[i].tick(this);
@@ -215,44 +684,46 @@ public class Field implements ContactListener {
      * Runs actions that were scheduled with scheduleAction and whose execution time has arrived.
      */
     void processScheduledActions() {
-        while (true) {
-            ScheduledAction nextAction = scheduledActions.peek();
-            if (nextAction!=null && gameTime >= nextAction.actionTime) {
-                scheduledActions.poll();
-                nextAction.action.run();
-            }
-            else {
-                break;
-            }
-        }
+        scheduledActions.runDueActions(gameTime);
     }
 
     /**
      * Schedules an action to be run after the given interval in milliseconds has elapsed.
-     * Interval is in game time, not real time.
+     * Interval is in game time, not real time. The same Runnable can be scheduled repeatedly
+     * without allocating. Returns a handle that can be passed to cancelScheduledAction.
      */
-    public void scheduleAction(long interval, Runnable action) {
-        ScheduledAction sa = new ScheduledAction();
+    public long scheduleAction(long interval, Runnable action) {
         // interval is in milliseconds, gameTime is in nanoseconds
-        sa.actionTime = gameTime + (interval * 1000000);
-        sa.action = action;
-        scheduledActions.add(sa);
+        return scheduledActions.schedule(gameTime + (interval * 1000000), action);
+    }
+
+    /**
+     * Cancels an action previously scheduled with scheduleAction. Returns true if the action
+     * was cancelled, false if it already ran or was cancelled, or if the field has been reset
+     * since it was scheduled.
+     */
+    public boolean cancelScheduledAction(long handle) {
+        return scheduledActions.cancel(handle);
     }
 
     /**
      * Launches a new ball. The position and velocity of the ball are controlled by the parameters
      * in the field layout JSON.
      */
+    Vector2 launchVelocity = new Vector2(); // avoid allocation every time
     public Ball launchBall() {
+        boolean wasSuppressed = beginInput(Replay.LAUNCH_BALL);
         List<Float> position = layout.getLaunchPosition();
-        List<Float> velocity = layout.getLaunchVelocity();
+        Vector2 velocity = layout.getLaunchVelocity(launchVelocity);
         float radius = layout.getBallRadius();
 
         Ball ball = Ball.create(world, position.get(0), position.get(1), radius,
                 layout.getBallColor(), layout.getSecondaryBallColor());
-        ball.getBody().setLinearVelocity(new Vector2(velocity.get(0), velocity.get(1)));
+        ball.getBody().setLinearVelocity(velocity);
         this.balls.add(ball);
+        ballsChanged();
         audioPlayer.playBall();
+        endInput(wasSuppressed);
         return ball;
     }
 
@@ -260,11 +731,21 @@ public class Field implements ContactListener {
     public void removeBall(Ball ball) {
         world.destroyBody(ball.getBody());
         this.balls.remove(ball);
+        lostBallCount++;
+        ballsChanged();
         if (this.balls.size()==0) {
             this.doBallLost();
         }
     }
 
+    /**
+     * Returns the number of balls removed by removeBall since the field was created. Unlike calls
+     * to doBallLost, this counts every ball lost during multiball.
+     */
+    public int getLostBallCount() {
+        return lostBallCount;
+    }
+
     /**
      * Removes a ball from play, but does not call doBallLost for end-of-ball processing even if
      * no balls remain.
@@ -272,6 +753,17 @@ public class Field implements ContactListener {
     public void removeBallWithoutBallLoss(Ball ball) {
         world.destroyBody(ball.getBody());
         this.balls.remove(ball);
+        ballsChanged();
+    }
+
+    /**
+     * Called when balls are added or removed. Rollovers and sensors stop using the proximity grid
+     * results for the rest of the tick, since they may include balls that have been destroyed.
+     */
+    void ballsChanged() {
+        if (proximityGrid != null) {
+            proximityGrid.ballsChanged();
+        }
     }
 
     /**
@@ -284,17 +776,14 @@ public class Field implements ContactListener {
         // display message for next ball or game over
         String msg = null;
         if (hasExtraBall) msg = "Shoot Again";
-        else if (this.gameState.isGameInProgress()) msg = "Ball " + this.gameState.getBallNumber();
+        else if (this.gameState.isGameInProgress()) msg = BALL_NUMBER_MESSAGES.get(this.gameState.getBallNumber());
 
         if (msg!=null) {
-            // game is still going, show message after delay
-            final String msg2 = msg; // must be final for closure, yay Java
-            this.scheduleAction(1500, new Runnable() {
-                @Override
-                public void run() {
-                    showGameMessage(msg2, 1500, false); // no sound effect
-                }
-            });
+            // game is still going, show message after delay. If a message for a previous ball is
+            // still pending, only the latest is shown.
+            nextBallMessage = msg;
+            cancelScheduledAction(nextBallMessageHandle);
+            nextBallMessageHandle = this.scheduleAction(1500, showNextBallMessage);
         }
         else {
             endGame();
@@ -317,6 +806,26 @@ public class Field implements ContactListener {
     }
 
 
+    /**
+     * Returns the number of real-time nanoseconds until an idle field needs to be ticked again,
+     * because a scheduled action becomes due or the current game message expires. Returns -1 if
+     * nothing is pending, so the field can stay idle until there's input.
+     */
+    public long getIdleWakeupNanos() {
+        long result = -1;
+        long nextActionTime = scheduledActions.nextActionTime();
+        if (nextActionTime != Long.MAX_VALUE) {
+            result = Math.max(0, (long) ((nextActionTime - gameTime) / getTargetTimeRatio()));
+        }
+        if (gameMessage != null) {
+            // processGameMessages removes the message once its duration is strictly exceeded.
+            long messageMillis = gameMessage.creationTime + gameMessage.duration + 1 - clock.currentTimeMillis();
+            long messageNanos = Math.max(0, messageMillis) * 1000000;
+            result = (result < 0) ? messageNanos : Math.min(result, messageNanos);
+        }
+        return result;
+    }
+
     ArrayList<Ball> deadBalls = new ArrayList<Ball>(); // avoid allocation every time
     /**
      * Removes balls that are not in play, as determined by optional "deadzone" property of
@@ -325,6 +834,8 @@ public class Field implements ContactListener {
     public void removeDeadBalls() {
         List<Float> deadRect = layout.getLaunchDeadZone();
         if (deadRect==null) return;
+        // Only recorded when it can have an effect.
+        boolean wasSuppressed = beginInput(Replay.REMOVE_DEAD_BALLS);
 
         for(int i=0; i<this.balls.size(); i++) {
             Ball ball = this.balls.get(i);
@@ -339,7 +850,9 @@ public class Field implements ContactListener {
         for(int i=0; i<deadBalls.size(); i++) {
             this.balls.remove(deadBalls.get(i));
         }
+        if (deadBalls.size() > 0) ballsChanged();
         deadBalls.clear();
+        endInput(wasSuppressed);
     }
 
     /** Called by FieldView to draw the balls currently in play. */
@@ -349,6 +862,58 @@ public class Field implements ContactListener {
         }
     }
 
+    /**
+     * Records the field's elements and balls into a RenderSnapshot and makes it available from
+     * getLatestRenderSnapshot. target is the renderer the snapshot will be drawn to. Should be
+     * called from a single thread while holding the field's lock, normally by FieldDriver after
+     * each tick. Elements that are drawn statically are recorded into a separate static layer,
+     * which is only recorded again when one of them changes, so renderers can cache it.
+     */
+    public void publishRenderSnapshot(IFieldRenderer target) {
+        recordRenderSnapshot(renderSnapshots.getWriteSnapshot(), target);
+        renderSnapshots.publish();
+    }
+
+    /**
+     * Records the field into snapshot as publishRenderSnapshot does, without publishing it.
+     * FieldDriver uses this to keep the states after the last two physics steps, and publishes
+     * snapshots interpolated between them. Must be called while holding the field's lock.
+     */
+    public void recordRenderSnapshot(RenderSnapshot snapshot, IFieldRenderer target) {
+        long version = 0;
+        for (FieldElement element : staticallyDrawnElements) {
+            version += element.getStaticDrawVersion();
+        }
+        if (staticLayer == null || version != staticLayerVersion) {
+            // A new object rather than reusing the old one, because renderers may still be drawing it.
+            staticLayer = new RenderSnapshot();
+            staticLayer.begin(target);
+            for (FieldElement element : staticallyDrawnElements) {
+                element.draw(staticLayer);
+            }
+            staticLayerVersion = version;
+        }
+        snapshot.begin(target);
+        snapshot.staticLayer = staticLayer;
+        for (FieldElement element : dynamicallyDrawnElements) {
+            element.draw(snapshot);
+        }
+        drawBalls(snapshot);
+    }
+
+    /**
+     * Returns the most recent snapshot from publishRenderSnapshot without locking the field. The
+     * snapshot won't change until this method is called again, which should always be from the
+     * same thread (normally the UI thread).
+     */
+    public RenderSnapshot getLatestRenderSnapshot() {
+        return renderSnapshots.getLatestSnapshot();
+    }
+
+    public RenderSnapshotBuffer getRenderSnapshotBuffer() {
+        return renderSnapshots;
+    }
+
     ArrayList<FlipperElement> activatedFlippers = new ArrayList<FlipperElement>();
     /**
      * Called to engage or disengage all flippers. If called with an argument of true, and all
@@ -380,14 +945,34 @@ public class Field implements ContactListener {
     }
 
     public void setAllFlippersEngaged(boolean engaged) {
-        setFlippersEngaged(this.getFlipperElements(), engaged);
+        setFlippersEngagedForInput(this.getFlipperElements(), engaged,
+                Replay.ALL_FLIPPERS_ENGAGED, Replay.ALL_FLIPPERS_RELEASED);
     }
 
     public void setLeftFlippersEngaged(boolean engaged) {
-        setFlippersEngaged(layout.getLeftFlipperElements(), engaged);
+        setFlippersEngagedForInput(layout.getLeftFlipperElements(), engaged,
+                Replay.LEFT_FLIPPERS_ENGAGED, Replay.LEFT_FLIPPERS_RELEASED);
     }
     public void setRightFlippersEngaged(boolean engaged) {
-        setFlippersEngaged(layout.getRightFlipperElements(), engaged);
+        setFlippersEngagedForInput(layout.getRightFlipperElements(), engaged,
+                Replay.RIGHT_FLIPPERS_ENGAGED, Replay.RIGHT_FLIPPERS_RELEASED);
+    }
+
+    void setFlippersEngagedForInput(List<FlipperElement> flippers, boolean engaged,
+            int engagedEvent, int releasedEvent) {
+        // Calls that don't change any flipper have no effect, so they don't need to be recorded.
+        // This keeps replays small when input is repeated, as with held keys.
+        boolean changesState = false;
+        for(int i=0; i<flippers.size(); i++) {
+            if (flippers.get(i).isFlipperEngaged() != engaged) {
+                changesState = true;
+                break;
+            }
+        }
+        if (!changesState) return;
+        boolean wasSuppressed = beginInput(engaged ? engagedEvent : releasedEvent);
+        setFlippersEngaged(flippers, engaged);
+        endInput(wasSuppressed);
     }
 
     /**
@@ -400,6 +985,7 @@ public class Field implements ContactListener {
             world.destroyBody(ball.getBody());
         }
         this.balls.clear();
+        ballsChanged();
         this.getGameState().setGameInProgress(false);
         this.showGameMessage("Game Over", 2500);
         getDelegate().gameEnded(this);
@@ -431,8 +1017,9 @@ public class Field implements ContactListener {
         for(int i=0; i<contactedBalls.size(); i++) {
             Ball ball = contactedBalls.get(i);
             Fixture f = contactedFixtures.get(i);
-            FieldElement element = bodyToFieldElement.get(f.getBody());
-            if (element!=null) {
+            Object userData = f.getBody().getUserData();
+            if (userData instanceof FieldElement) {
+                FieldElement element = (FieldElement) userData;
                 element.handleCollision(ball, f.getBody(), this);
                 if (delegate!=null) {
                     delegate.processCollision(this, element, f.getBody(), ball);
@@ -445,37 +1032,25 @@ public class Field implements ContactListener {
         }
     }
 
-    private Ball ballWithBody(Body body) {
-        for (int i=0; i<this.balls.size(); i++) {
-            Ball ball = this.balls.get(i);
-            if (ball.getBody() == body) {
-                return ball;
-            }
-        }
-        return null;
-    }
-
     // Box2D ContactListener methods.
     @Override public void beginContact(Contact contact) {
         // Nothing here, contact is recorded in endContact().
     }
 
     @Override public void endContact(Contact contact) {
-        Fixture fixture = null;
-        Ball ball = ballWithBody(contact.getFixtureA().getBody());
-        if (ball != null) {
-            fixture = contact.getFixtureB();
-        }
-        else {
-            ball = ballWithBody(contact.getFixtureB().getBody());
-            if (ball != null) {
-                fixture = contact.getFixtureA();
-            }
+        // Ball bodies have their Ball as user data (see Ball.create).
+        Fixture fixtureA = contact.getFixtureA();
+        Fixture fixtureB = contact.getFixtureB();
+        Object userDataA = fixtureA.getBody().getUserData();
+        if (userDataA instanceof Ball) {
+            contactedBalls.add((Ball) userDataA);
+            contactedFixtures.add(fixtureB);
+            return;
         }
-
-        if (ball != null) {
-            contactedBalls.add(ball);
-            contactedFixtures.add(fixture);
+        Object userDataB = fixtureB.getBody().getUserData();
+        if (userDataB instanceof Ball) {
+            contactedBalls.add((Ball) userDataB);
+            contactedFixtures.add(fixtureA);
         }
     }
 
@@ -494,7 +1069,8 @@ public class Field implements ContactListener {
      */
     public void showGameMessage(String text, long duration, boolean playSound) {
         if (playSound) audioPlayer.playMessage();
-        gameMessage = new GameMessage();
+        // Renderers only read the fields of the current message, so one object can be reused.
+        gameMessage = reusableGameMessage;
         gameMessage.text = text;
         gameMessage.duration = duration;
         gameMessage.creationTime = clock.currentTimeMillis();
@@ -550,8 +1126,8 @@ public class Field implements ContactListener {
         if (nanosSinceBallMoved > STUCK_BALL_NANOS) {
             showGameMessage("Bump!", 1000);
             // Could make the bump impulse table-specific if needed.
-            Vector2 impulse = new Vector2(RAND.nextBoolean() ? 1f : -1f, 1.5f);
-            ball.applyLinearImpulse(impulse);
+            stuckBallImpulse.set(RAND.nextBoolean() ? 1f : -1f, 1.5f);
+            ball.applyLinearImpulse(stuckBallImpulse);
             nanosSinceBallMoved = 0;
         }
     }
@@ -630,6 +1206,26 @@ public class Field implements ContactListener {
         return world;
     }
 
+    /** Returns the number of native Box2D worlds that exist in this process, for all fields. */
+    public static int getLiveWorldCount() {
+        return WorldPool.getLiveWorldCount();
+    }
+
+    /** Returns the number of native bodies in this field's world, or 0 if it's disposed. */
+    public int getLiveBodyCount() {
+        return (world != null) ? world.getBodyCount() : 0;
+    }
+
+    /** Returns the number of native fixtures in this field's world, or 0 if it's disposed. */
+    public int getLiveFixtureCount() {
+        return (world != null) ? world.getFixtureCount() : 0;
+    }
+
+    /** Returns the number of native joints in this field's world, or 0 if it's disposed. */
+    public int getLiveJointCount() {
+        return (world != null) ? world.getJointCount() : 0;
+    }
+
     public Delegate getDelegate() {
         return delegate;
     }
@@ -645,6 +1241,14 @@ public class Field implements ContactListener {
         audioPlayer = player;
     }
 
+    public TickTimings getTickTimings() {
+        return tickTimings;
+    }
+    /** Enables timing of tick() phases if the argument is non-null, disables if null. */
+    public void setTickTimings(TickTimings timings) {
+        this.tickTimings = timings;
+    }
+
     public Clock getClock() {
         return clock;
     }
@@ -0,0 +1,355 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dozingcatsoftware.vectorpinball.util.JSONUtils;
+
+/**
+ * Measures the throughput of Field.tick on the built-in tables with different numbers of balls
+ * in play. For each table and ball count, reports ticks per second, bytes allocated per tick,
+ * and how tick time is divided between Box2D world steps, contact processing, element ticks,
+ * and the delegate. Balls that drain are relaunched between ticks, outside the measured time.
+ *
+ * Usage: FieldBenchmark [-ticks N] [-warmup N] [-balls 1,3,10] [-maxBytesPerTick N]
+ *     [-synthetic 100,400] [-adaptive] [-segmentWalls] [table.json...]
+ * With no table arguments, runs on table1-5.json and starter.json. -synthetic runs on copies of
+ * starter.json with the given numbers of extra rollovers and sensors, with and without the
+ * ProximityGrid, to show how checking for balls in them scales. -adaptive enables adaptive
+ * stepping and reports the number of world steps per tick. -segmentWalls creates a separate
+ * body for each segment of wall paths and arcs instead of a chain shape, for comparison; the
+ * body and broadphase proxy counts and the average number of contacts (pairs of fixtures whose
+ * bounding boxes overlap) are reported for each table. If -maxBytesPerTick is given,
+ * exits with status 1 if any measurement allocated more than that many bytes per tick on average,
+ * so "-maxBytesPerTick 0" checks that ticks are allocation-free in a steady state. Fields are
+ * created with a fixed random seed, so the same table and ball count always play the same game.
+ * For this check each measurement is repeated and the run that allocated the least is reported:
+ * allocations made by the tick code happen again in every run, while one-time JVM costs like
+ * class loading, resolving string constants, and JIT recompilation only land in some of them.
+ * (Tables with Groovy scripts allocate when calling script closures, so they're expected to fail
+ * that check.)
+ */
+public class FieldBenchmark {
+
+    static final String BUILT_IN_TABLE_PATH = "/com/dozingcatsoftware/vectorpinball/tables/";
+    static final String[] BUILT_IN_TABLES = {
+        "table1.json", "table2.json", "table3.json", "table4.json", "table5.json", "starter.json",
+    };
+
+    static final long FRAME_NANOS = 1000000000L / 60;
+    static final int TICK_ITERATIONS = 4;
+    static final long RANDOM_SEED = 1;
+
+    int warmupTicks = 2000;
+    int measuredTicks = 10000;
+    boolean useProximityGrid = true;
+    boolean adaptiveStepping = false;
+    boolean chainShapeWalls = true;
+    // Number of extra identical runs to measure, keeping the one with the fewest allocations.
+    int repeatedRuns = 0;
+
+    // Uses the HotSpot extension to read per-thread allocation counts, if it's available.
+    final com.sun.management.ThreadMXBean threadBean = threadMXBean();
+
+    static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+                return sunBean;
+            }
+        }
+        return null;
+    }
+
+    long allocatedBytes() {
+        return (threadBean != null) ? threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /** Results for a single table and ball count. */
+    public static class Measurement {
+        public String tableName;
+        public int numBalls;
+        public long ticks;
+        public long tickNanos;
+        public long allocatedBytes;
+        public int bodies;
+        public int proxies;
+        // Sum over measured ticks of the world's contact count after the tick.
+        public long contacts;
+        public Field.TickTimings timings = new Field.TickTimings();
+        public AdaptiveStepper.Metrics steppingMetrics; // null unless adaptive stepping is enabled
+
+        public double ticksPerSecond() {
+            return ticks / (tickNanos / 1e9);
+        }
+
+        public double bytesPerTick() {
+            return ((double) allocatedBytes) / ticks;
+        }
+
+        public double contactsPerTick() {
+            return ((double) contacts) / ticks;
+        }
+
+        double percent(long nanos) {
+            long total = timings.totalNanos();
+            return (total > 0) ? 100.0 * nanos / total : 0;
+        }
+
+        @Override public String toString() {
+            return String.format(
+                    "%-20s balls: %2d  ticks/s: %9.1f  bytes/tick: %8.1f  " +
+                    "step: %4.1f%%  contacts: %4.1f%%  elements: %4.1f%%  delegate: %4.1f%%  other: %4.1f%%  " +
+                    "bodies: %d  proxies: %d  pairs: %.1f",
+                    tableName, numBalls, ticksPerSecond(), bytesPerTick(),
+                    percent(timings.worldStepNanos), percent(timings.contactNanos),
+                    percent(timings.elementTickNanos), percent(timings.delegateTickNanos),
+                    percent(timings.otherNanos), bodies, proxies, contactsPerTick()) +
+                    ((steppingMetrics != null) ? String.format("  steps/tick: %.2f  saved: %.1f%%",
+                            steppingMetrics.averageStepsPerTick(),
+                            100 * steppingMetrics.fractionOfStepsSaved()) : "");
+        }
+    }
+
+    static Field createField(Map<String, Object> layoutMap, Clock clock, boolean useProximityGrid,
+            boolean adaptiveStepping, boolean chainShapeWalls) {
+        Field field = new Field();
+        field.useProximityGrid = useProximityGrid;
+        field.useChainShapeWalls = chainShapeWalls;
+        field.setAdaptiveStepping(adaptiveStepping);
+        field.setClock(clock);
+        field.setAudioPlayer(AudioPlayer.NoOpPlayer.getInstance());
+        field.setRandomSeed(RANDOM_SEED);
+        field.resetForLevel(layoutMap);
+        field.getGameState().setUnlimitedBalls(true);
+        field.startGame();
+        return field;
+    }
+
+    static void launchBallsIfNeeded(Field field, int numBalls) {
+        if (field.getBalls().size() < numBalls) {
+            field.removeDeadBalls();
+            while (field.getBalls().size() < numBalls) {
+                field.launchBall();
+            }
+        }
+    }
+
+    /**
+     * Runs warmup ticks and then measured ticks on a newly created field, keeping numBalls balls
+     * in play. Timings of tick phases are only collected during the measured ticks. If
+     * repeatedRuns is set, does that many more identical runs and returns the one that
+     * allocated the fewest bytes.
+     */
+    public Measurement measure(String tableName, Map<String, Object> layoutMap, int numBalls) {
+        Measurement best = measureOnce(tableName, layoutMap, numBalls);
+        for (int i=0; i<repeatedRuns; i++) {
+            Measurement m = measureOnce(tableName, layoutMap, numBalls);
+            if (m.allocatedBytes < best.allocatedBytes) best = m;
+        }
+        return best;
+    }
+
+    Measurement measureOnce(String tableName, Map<String, Object> layoutMap, int numBalls) {
+        Clock.ManualClock clock = new Clock.ManualClock();
+        Field field = createField(layoutMap, clock, useProximityGrid, adaptiveStepping, chainShapeWalls);
+        long fieldTickNanos = (long) (FRAME_NANOS * field.getTargetTimeRatio());
+
+        for (int i=0; i<warmupTicks; i++) {
+            launchBallsIfNeeded(field, numBalls);
+            clock.advanceNanos(FRAME_NANOS);
+            field.tick(fieldTickNanos, TICK_ITERATIONS);
+        }
+
+        Measurement m = new Measurement();
+        m.tableName = tableName;
+        m.numBalls = numBalls;
+        m.steppingMetrics = field.getAdaptiveSteppingMetrics();
+        if (m.steppingMetrics != null) m.steppingMetrics.reset();
+        field.setTickTimings(m.timings);
+        for (int i=0; i<measuredTicks; i++) {
+            launchBallsIfNeeded(field, numBalls);
+            clock.advanceNanos(FRAME_NANOS);
+            long bytesBefore = allocatedBytes();
+            long startNanos = System.nanoTime();
+            field.tick(fieldTickNanos, TICK_ITERATIONS);
+            m.tickNanos += System.nanoTime() - startNanos;
+            m.allocatedBytes += allocatedBytes() - bytesBefore;
+            m.contacts += field.getBox2DWorld().getContactCount();
+            m.ticks++;
+        }
+        m.bodies = field.getLiveBodyCount();
+        m.proxies = field.getBox2DWorld().getProxyCount();
+        field.setTickTimings(null);
+        field.dispose();
+        return m;
+    }
+
+    static Map<String, Object> readBuiltInTable(String name) throws IOException {
+        try (InputStream input = FieldBenchmark.class.getResourceAsStream(BUILT_IN_TABLE_PATH + name)) {
+            if (input == null) {
+                throw new IllegalArgumentException("Table " + name + " not found");
+            }
+            BufferedReader br = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            StringBuilder buffer = new StringBuilder();
+            String line;
+            while ((line = br.readLine()) != null) {
+                buffer.append(line);
+            }
+            return JSONUtils.mapFromJSONString(buffer.toString());
+        }
+    }
+
+    static int[] parseCounts(String arg) {
+        String[] counts = arg.split(",");
+        int[] result = new int[counts.length];
+        for (int i=0; i<counts.length; i++) {
+            result[i] = Integer.parseInt(counts[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of starter.json with numItems rollovers (in groups of 10) and numItems
+     * sensors spread across the playfield. The script and launch barrier are removed so that
+     * sensors don't call into Groovy and balls reach the playfield without it.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> syntheticTable(int numItems) throws IOException {
+        Map<String, Object> layoutMap = readBuiltInTable("starter.json");
+        layoutMap.remove("script");
+        List<Object> elements = (List<Object>) layoutMap.get("elements");
+        for (int i=elements.size()-1; i>=0; i--) {
+            if ("LaunchBarrier".equals(((Map<String, Object>) elements.get(i)).get("id"))) {
+                elements.remove(i);
+            }
+        }
+        // Alternate rollovers and sensors on a lattice covering the playfield above the flippers.
+        double xmin = 1.5, xmax = 16, ymin = 8, ymax = 27;
+        double spacing = Math.sqrt((xmax - xmin) * (ymax - ymin) / (2 * numItems));
+        double size = 0.3 * spacing;
+        int columns = (int) ((xmax - xmin) / spacing);
+        Map<String, Object> group = null;
+        for (int i=0; i<2*numItems; i++) {
+            double x = xmin + spacing * (i % columns);
+            double y = ymin + spacing * (i / columns);
+            if (i % 2 == 0) {
+                if (group == null || ((List<Object>) group.get("rollovers")).size() == 10) {
+                    group = new HashMap<String, Object>();
+                    group.put("class", "RolloverGroupElement");
+                    group.put("radius", size);
+                    group.put("toggleOff", true);
+                    group.put("score", 10);
+                    group.put("rollovers", new ArrayList<Object>());
+                    elements.add(group);
+                }
+                Map<String, Object> rollover = new HashMap<String, Object>();
+                rollover.put("position", Arrays.asList(x, y));
+                ((List<Object>) group.get("rollovers")).add(rollover);
+            }
+            else {
+                Map<String, Object> sensor = new HashMap<String, Object>();
+                sensor.put("class", "SensorElement");
+                sensor.put("rect", Arrays.asList(x - size, y - size, x + size, y + size));
+                elements.add(sensor);
+            }
+        }
+        return layoutMap;
+    }
+
+    public static void main(String[] args) throws IOException {
+        FieldBenchmark benchmark = new FieldBenchmark();
+        int[] ballCounts = {1, 3, 10};
+        double maxBytesPerTick = -1;
+        List<String> tablePaths = new ArrayList<String>();
+        int[] syntheticCounts = null;
+        for (int i=0; i<args.length; i++) {
+            if ("-ticks".equals(args[i])) {
+                benchmark.measuredTicks = Integer.parseInt(args[++i]);
+            }
+            else if ("-warmup".equals(args[i])) {
+                benchmark.warmupTicks = Integer.parseInt(args[++i]);
+            }
+            else if ("-maxBytesPerTick".equals(args[i])) {
+                maxBytesPerTick = Double.parseDouble(args[++i]);
+                benchmark.repeatedRuns = 3;
+            }
+            else if ("-balls".equals(args[i])) {
+                ballCounts = parseCounts(args[++i]);
+            }
+            else if ("-adaptive".equals(args[i])) {
+                benchmark.adaptiveStepping = true;
+            }
+            else if ("-segmentWalls".equals(args[i])) {
+                benchmark.chainShapeWalls = false;
+            }
+            else if ("-synthetic".equals(args[i])) {
+                syntheticCounts = parseCounts(args[++i]);
+            }
+            else {
+                tablePaths.add(args[i]);
+            }
+        }
+
+        List<Measurement> measurements = new ArrayList<Measurement>();
+        if (syntheticCounts != null) {
+            for (int numItems : syntheticCounts) {
+                Map<String, Object> layoutMap = syntheticTable(numItems);
+                for (int numBalls : ballCounts) {
+                    for (boolean useGrid : new boolean[] {true, false}) {
+                        benchmark.useProximityGrid = useGrid;
+                        String name = "synthetic-" + numItems + (useGrid ? "" : "-nogrid");
+                        measurements.add(benchmark.measure(name, layoutMap, numBalls));
+                        System.out.println(measurements.get(measurements.size()-1));
+                    }
+                }
+            }
+            benchmark.useProximityGrid = true;
+        }
+        else if (tablePaths.isEmpty()) {
+            for (String name : BUILT_IN_TABLES) {
+                Map<String, Object> layoutMap = readBuiltInTable(name);
+                for (int numBalls : ballCounts) {
+                    measurements.add(benchmark.measure(name, layoutMap, numBalls));
+                    System.out.println(measurements.get(measurements.size()-1));
+                }
+            }
+        }
+        else {
+            for (String path : tablePaths) {
+                String json = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+                Map<String, Object> layoutMap = JSONUtils.mapFromJSONString(json);
+                String name = Paths.get(path).getFileName().toString();
+                for (int numBalls : ballCounts) {
+                    measurements.add(benchmark.measure(name, layoutMap, numBalls));
+                    System.out.println(measurements.get(measurements.size()-1));
+                }
+            }
+        }
+
+        if (maxBytesPerTick >= 0) {
+            boolean failed = false;
+            for (Measurement m : measurements) {
+                if (m.bytesPerTick() > maxBytesPerTick) {
+                    System.out.println(String.format("FAILED: %s with %d balls allocated %.4f bytes/tick",
+                            m.tableName, m.numBalls, m.bytesPerTick()));
+                    failed = true;
+                }
+            }
+            if (failed) System.exit(1);
+        }
+    }
+}
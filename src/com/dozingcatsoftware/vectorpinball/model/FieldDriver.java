@@ -1,5 +1,8 @@
 package com.dozingcatsoftware.vectorpinball.model;
 
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
 import com.dozingcatsoftware.vectorpinball.util.FrameRateManager;
 
 /** Class to manage the game thread which updates the game's internal state and draws to the FieldView. Controls the
@@ -13,23 +16,55 @@ public class FieldDriver {
 	IFieldRenderer fieldRenderer;
 	Field field;
 
-	boolean running;
+	volatile boolean running;
 	Thread gameThread;
+	// Set by wakeUp to end an idle wait; the game thread clears it before deciding to wait.
+	volatile boolean wakeupRequested;
 	boolean canDraw = false;
 
-	FrameRateManager frameRateManager = new FrameRateManager(
-	        new double[] {60, 50, 45, 40, 30},
-	        new double[] {57, 48, 43, 38});
+	static final double[] TARGET_FRAME_RATES = {60, 50, 45, 40, 30};
+	static final double[] MINIMUM_FRAME_RATES = {57, 48, 43, 38};
+
+	volatile FrameRateManager frameRateManager = new FrameRateManager(TARGET_FRAME_RATES, MINIMUM_FRAME_RATES);
 	double averageFPS;
 
-	static long INACTIVE_FRAME_MSECS = 250; // sleep this long when field.hasActiveElements() is false
+	// The field is always advanced in steps of this much real time, so the simulation is the same at
+	// any frame rate. Each frame runs as many steps as have accumulated since the last frame.
+	static final long PHYSICS_STEP_NANOS = 1000000000L / 60;
+	// Limits the steps run in one frame after a stall, so the simulation doesn't spiral trying to catch up.
+	static final int MAX_PHYSICS_STEPS_PER_FRAME = 5;
+	long accumulatedNanos;
+	// The field after the previous and latest physics steps. Frames are drawn between them, according to
+	// how far the accumulated time is into the next step.
+	RenderSnapshot previousStepSnapshot = new RenderSnapshot();
+	RenderSnapshot latestStepSnapshot = new RenderSnapshot();
+
+	// When field.hasActiveElements() is false, the game thread waits until there's input. If a
+	// scheduled action or game message is pending, it wakes at most this often to tick the field.
+	static long INACTIVE_FRAME_MSECS = 250;
 
 	public void setFieldRenderer(IFieldRenderer value) {
 		this.fieldRenderer = value;
 	}
 
 	public void setField(Field value) {
+		if (this.field != null) {
+			this.field.setWakeupListener(null);
+		}
 		this.field = value;
+		if (value != null) {
+			value.setWakeupListener(this::wakeUp);
+		}
+	}
+
+	/** Ends an idle wait of the game thread, so that it resumes ticking the field.
+	 */
+	public void wakeUp() {
+		wakeupRequested = true;
+		Thread thread = gameThread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
 	}
 
 	/** Starts the game thread running. Does not actually start a new game.
@@ -50,6 +85,7 @@ public class FieldDriver {
 	 */
 	public void stop() {
 		running = false;
+		wakeUp();
 		try {
 			gameThread.join();
 		}
@@ -57,26 +93,58 @@ public class FieldDriver {
 	}
 
 
-	/** Main loop for the game thread. Repeatedly calls field.tick to advance the game simulation, redraws the field,
-	 * and sleeps until it's time for the next frame. Dynamically adjusts sleep times in an attempt to maintain a
-	 * consistent frame rate.
+	/** Main loop for the game thread. Repeatedly calls field.tick to advance the game simulation in fixed steps,
+	 * redraws the field, and sleeps until it's time for the next frame. Dynamically adjusts sleep times in an attempt
+	 * to maintain a consistent frame rate.
 	 */
 	void threadMain() {
+		long lastFrameTime = System.nanoTime();
+		// True after parking in waitWhileIdle, until the next frame in which the field is active.
+		boolean resumingFromIdle = false;
 		while (running) {
 			frameRateManager.frameStarted();
+			long frameTime = System.nanoTime();
+			long elapsedNanos = frameTime - lastFrameTime;
+			lastFrameTime = frameTime;
 			boolean fieldActive = true;
+			long idleWakeupNanos = -1;
 			if (field!=null && fieldRenderer.canDraw()) {
 				try {
+					double drawFraction = 1;
+					// Clear before checking whether the field is idle, so input after the check isn't missed.
+					wakeupRequested = false;
 					synchronized(field) {
-						long nanosPerFrame = (long)(1000000000L / frameRateManager.targetFramesPerSecond());
-						long fieldTickNanos = (long)(nanosPerFrame*field.getTargetTimeRatio());
-						// if field isn't doing anything, sleep for a long time
+						field.applyQueuedInput();
 						fieldActive = field.hasActiveElements();
-						if (!fieldActive) {
-							fieldTickNanos = (long)(INACTIVE_FRAME_MSECS*1000000*field.getTargetTimeRatio());
+						if (fieldActive) {
+							// The time since the last frame includes the idle wait, which shouldn't be simulated after
+							// input such as a launch that ends it. Idle frames still use it, so scheduled actions come due.
+							if (resumingFromIdle) {
+								elapsedNanos = Math.min(elapsedNanos, PHYSICS_STEP_NANOS);
+								resumingFromIdle = false;
+							}
+							accumulatedNanos += Math.min(elapsedNanos, MAX_PHYSICS_STEPS_PER_FRAME*PHYSICS_STEP_NANOS);
+							long fieldTickNanos = (long)(PHYSICS_STEP_NANOS*field.getTargetTimeRatio());
+							while (accumulatedNanos >= PHYSICS_STEP_NANOS) {
+								field.tick(fieldTickNanos, 4);
+								accumulatedNanos -= PHYSICS_STEP_NANOS;
+								recordStep();
+							}
+							drawFraction = ((double)accumulatedNanos) / PHYSICS_STEP_NANOS;
+						}
+						else {
+							// Nothing is moving, so advance by the time spent waiting and draw the result as is.
+							long idleNanos = Math.min(elapsedNanos, INACTIVE_FRAME_MSECS*1000000);
+							field.tick((long)(idleNanos*field.getTargetTimeRatio()), 4);
+							accumulatedNanos = 0;
+							recordStep();
+							idleWakeupNanos = field.getIdleWakeupNanos();
 						}
-						field.tick(fieldTickNanos, 4);
 					}
+					// The renderer draws this snapshot without holding the field lock.
+					RenderSnapshotBuffer snapshots = field.getRenderSnapshotBuffer();
+					snapshots.getWriteSnapshot().interpolate(previousStepSnapshot, latestStepSnapshot, drawFraction);
+					snapshots.publish();
 					drawField();
 				}
 				catch(Exception ex) {
@@ -84,14 +152,13 @@ public class FieldDriver {
 				}
 			}
 
-			// if field is inactive, clear start time history and bail
+			// if field is inactive, clear start time history and wait for input or pending actions
 			if (!fieldActive) {
 				frameRateManager.clearTimestamps();
 				setAverageFPS(0);
-				try {
-					Thread.sleep(INACTIVE_FRAME_MSECS);
-				}
-				catch(InterruptedException ignored) {}
+				waitWhileIdle((idleWakeupNanos >= 0) ?
+						Math.min(idleWakeupNanos, INACTIVE_FRAME_MSECS*1000000) : -1);
+				resumingFromIdle = true;
 				continue;
 			}
 
@@ -99,19 +166,78 @@ public class FieldDriver {
 
 			// for debugging, show frames per second and other info
 			if (frameRateManager.getTotalFrames() % 100 == 0) {
-				fieldRenderer.setDebugMessage(frameRateManager.fpsDebugInfo());
+				String debugInfo = frameRateManager.fpsDebugInfo();
+				if (field != null) {
+					debugInfo += " input latency: " + field.getInputQueue().getLatencyHistogram();
+				}
+				fieldRenderer.setDebugMessage(debugInfo);
 				setAverageFPS(frameRateManager.currentFramesPerSecond());
 				//setAverageFPS(fieldView.frManager.currentFramesPerSecond());
 			}
 		}
 	}
 
+	/** Records the field after a physics step, keeping the previous step's snapshot to interpolate from.
+	 */
+	void recordStep() {
+		RenderSnapshot snapshot = previousStepSnapshot;
+		previousStepSnapshot = latestStepSnapshot;
+		latestStepSnapshot = snapshot;
+		field.recordRenderSnapshot(snapshot, fieldRenderer);
+	}
+
+	/** Parks the game thread until wakeUp is called or stop is called, or until maxNanos have elapsed if it's
+	 * not negative. The field was drawn after its last tick, so there's nothing to redraw while waiting.
+	 */
+	void waitWhileIdle(long maxNanos) {
+		long deadline = System.nanoTime() + maxNanos;
+		while (running && !wakeupRequested) {
+			if (maxNanos < 0) {
+				LockSupport.park(this);
+			}
+			else {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) break;
+				LockSupport.parkNanos(this, remaining);
+			}
+		}
+	}
+
 	/** Calls FieldViewManager.doDraw to render the game field to the display.
 	 */
 	void drawField() {
 		fieldRenderer.doDraw();
 	}
 
+	/** Limits drawing to at most the given number of frames per second, for slow machines. The frame rate can still
+	 * drop from there if it can't be maintained. Physics steps are the same at any frame rate, so this doesn't affect
+	 * gameplay.
+	 */
+	public void setMaxFramesPerSecond(double maxFPS) {
+		int first = 0;
+		while (first < TARGET_FRAME_RATES.length-1 && TARGET_FRAME_RATES[first] > maxFPS) {
+			first++;
+		}
+		FrameRateManager manager;
+		if (TARGET_FRAME_RATES[first] > maxFPS) {
+			manager = new FrameRateManager(maxFPS);
+		}
+		else {
+			manager = new FrameRateManager(
+					Arrays.copyOfRange(TARGET_FRAME_RATES, first, TARGET_FRAME_RATES.length),
+					Arrays.copyOfRange(MINIMUM_FRAME_RATES, Math.min(first, MINIMUM_FRAME_RATES.length), MINIMUM_FRAME_RATES.length));
+		}
+		manager.setSpinNanos(frameRateManager.getSpinNanos());
+		frameRateManager = manager;
+	}
+
+	/** Sets how long before each frame the game thread stops parking and spins, trading CPU time for more precise
+	 * frame timing. See FrameRateManager.setSpinNanos.
+	 */
+	public void setFrameSpinNanos(long nanos) {
+		frameRateManager.setSpinNanos(nanos);
+	}
+
 	/** Resets the frame rate and forgets any locked rate, called when rendering quality is changed.
 	 */
 	public void resetFrameRate() {
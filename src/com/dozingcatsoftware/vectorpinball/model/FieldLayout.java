@@ -4,14 +4,18 @@ import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
 import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloatList;
 import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asInt;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
 
+import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.World;
 import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
 import com.dozingcatsoftware.vectorpinball.elements.FieldElementCollection;
@@ -41,13 +45,25 @@ public class FieldLayout {
     private FieldLayout() {}
 
     public static FieldLayout layoutForLevel(Map<String, Object> levelMap, World world) {
+        return layoutForLevel(levelMap, world, true);
+    }
+
+    /**
+     * Creates a layout whose wall paths and arcs use chain shapes if chainShapeWalls is true, or
+     * a separate body for each segment if it's false. Elements added later by updateElements
+     * are created the same way.
+     */
+    public static FieldLayout layoutForLevel(Map<String, Object> levelMap, World world,
+            boolean chainShapeWalls) {
         FieldLayout layout = new FieldLayout();
+        layout.chainShapeWalls = chainShapeWalls;
         layout.initFromLevel(levelMap, world);
         return layout;
     }
 
     Map<String, Object> allParameters;
     FieldElementCollection fieldElements;
+    boolean chainShapeWalls = true;
     float width;
     float height;
     float gravity;
@@ -72,6 +88,7 @@ public class FieldLayout {
     @SuppressWarnings("unchecked")
     private FieldElementCollection createFieldElements(Map<String, Object> layoutMap, World world) {
         FieldElementCollection elements = new FieldElementCollection();
+        elements.setChainShapeWalls(chainShapeWalls);
 
         Map<String, Object> variables = (Map<String, Object>) layoutMap.get(VARIABLES_PROPERTY);
         if (variables != null) {
@@ -96,6 +113,74 @@ public class FieldLayout {
         return elements;
     }
 
+    /**
+     * Returns true if the two layout maps have equal values for every property other than
+     * "elements", so that a layout can switch between them by updating its elements.
+     */
+    static boolean hasSamePropertiesExceptElements(Map<String, Object> map1, Map<String, Object> map2) {
+        Set<String> keys = new HashSet<String>(map1.keySet());
+        keys.addAll(map2.keySet());
+        for (String key : keys) {
+            if (!ELEMENTS_PROPERTY.equals(key) && !Objects.equals(map1.get(key), map2.get(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Changes the layout's elements to those of layoutMap, which must have the same properties as
+     * the current layout other than "elements". Existing elements whose parameters are equal to
+     * those of an element in the new map are kept, and only the others are created in world.
+     * Adds the created elements to addedElements, and the elements no longer in the layout to
+     * removedElements; their bodies still have to be destroyed.
+     */
+    @SuppressWarnings("unchecked")
+    void updateElements(Map<String, Object> layoutMap, World world,
+            List<FieldElement> addedElements, List<FieldElement> removedElements) {
+        Map<Map<String, ?>, ArrayDeque<FieldElement>> unmatchedElements =
+                new HashMap<Map<String, ?>, ArrayDeque<FieldElement>>();
+        for (FieldElement element : fieldElements.getAllElements()) {
+            ArrayDeque<FieldElement> sameParams = unmatchedElements.get(element.getParameters());
+            if (sameParams == null) {
+                sameParams = new ArrayDeque<FieldElement>();
+                unmatchedElements.put(element.getParameters(), sameParams);
+            }
+            sameParams.add(element);
+        }
+
+        FieldElementCollection elements = new FieldElementCollection();
+        elements.setChainShapeWalls(chainShapeWalls);
+        Map<String, Object> variables = (Map<String, Object>) layoutMap.get(VARIABLES_PROPERTY);
+        if (variables != null) {
+            for (String varname : variables.keySet()) {
+                elements.setVariable(varname, variables.get(varname));
+            }
+        }
+        for (Object obj : listForKey(layoutMap, ELEMENTS_PROPERTY)) {
+            if (!(obj instanceof Map)) continue;
+            Map<String, Object> params = (Map<String, Object>) obj;
+            ArrayDeque<FieldElement> sameParams = unmatchedElements.get(params);
+            if (sameParams != null && !sameParams.isEmpty()) {
+                elements.addElement(sameParams.poll());
+                continue;
+            }
+            try {
+                FieldElement element = FieldElement.createFromParameters(params, elements, world);
+                elements.addElement(element);
+                addedElements.add(element);
+            }
+            catch (FieldElement.DependencyNotAvailableException ex) {
+                // Skipped, as in createFieldElements.
+            }
+        }
+        for (ArrayDeque<FieldElement> unmatched : unmatchedElements.values()) {
+            removedElements.addAll(unmatched);
+        }
+        this.allParameters = layoutMap;
+        this.fieldElements = elements;
+    }
+
     void initFromLevel(Map<String, Object> layoutMap, World world) {
         this.width = asFloat(layoutMap.get(WIDTH_PROPERTY), 20.0f);
         this.height = asFloat(layoutMap.get(HEIGHT_PROPERTY), 30.0f);
@@ -159,8 +244,22 @@ public class FieldLayout {
         return launchDeadZoneRect;
     }
 
+    /** Seeds the generator for random launch velocity increments. */
+    void setRandomSeed(long seed) {
+        RAND = new Random(seed);
+    }
+
     // Can apply random velocity increment if specified by "launchVelocityRandomDelta" key.
     public List<Float> getLaunchVelocity() {
+        Vector2 velocity = getLaunchVelocity(new Vector2());
+        return Arrays.asList(velocity.x, velocity.y);
+    }
+
+    /**
+     * Same as getLaunchVelocity(), but stores the velocity in the given vector instead of
+     * allocating a list. Returns the vector.
+     */
+    public Vector2 getLaunchVelocity(Vector2 result) {
         float vx = launchVelocity.get(0).floatValue();
         float vy = launchVelocity.get(1).floatValue();
 
@@ -172,7 +271,7 @@ public class FieldLayout {
                 vy += launchVelocityRandomDelta.get(1) * RAND.nextFloat();
             }
         }
-        return Arrays.asList(vx, vy);
+        return result.set(vx, vy);
     }
 
     public float getWidth() {
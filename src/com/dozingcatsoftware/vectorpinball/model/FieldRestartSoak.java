@@ -0,0 +1,126 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import com.dozingcatsoftware.vectorpinball.util.JSONUtils;
+
+/**
+ * Restarts a table many times the way the editor's "Start Game" does, and reports the process's
+ * resident memory and the live native Box2D objects as it goes, to check that worlds released by
+ * Field.resetForLevel don't leak native memory. Each restart resets the field, starts a game,
+ * launches a ball, and runs a few ticks so that there are contacts and joints in use. With -fast,
+ * restarts use Field.restartLevel, which keeps the world and elements since the layout doesn't
+ * change, instead of resetForLevel.
+ *
+ * Usage: FieldRestartSoak [-restarts N] [-ticks N] [-pool N] [-maxGrowthMB N] [-fast] [table.json]
+ * Defaults to 10000 restarts of table2.json with 10 ticks each and no world pool. Resident memory
+ * is read from /proc/self/status, so it's only reported on Linux. Exits with status 1 if any
+ * native world is still live after disposing the field and clearing the pool, or if resident
+ * memory grew by more than maxGrowthMB (default 32) between the first report, after 10% of the
+ * restarts, and the end.
+ */
+public class FieldRestartSoak {
+
+    static final long FRAME_NANOS = 1000000000L / 60;
+
+    /** Returns the process's resident set size in bytes, or -1 if it's not available. */
+    static long residentBytes() {
+        try {
+            List<String> lines = Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                if (line.startsWith("VmRSS:")) {
+                    // For example "VmRSS:     123456 kB".
+                    String[] parts = line.trim().split("\\s+");
+                    return Long.parseLong(parts[1]) * 1024;
+                }
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            // Not Linux, or an unexpected format.
+        }
+        return -1;
+    }
+
+    static String report(int restarts, Field field) {
+        Runtime runtime = Runtime.getRuntime();
+        long rss = residentBytes();
+        return String.format("restarts: %d  rss: %s  heap: %.1fMB  worlds: %d  bodies: %d  fixtures: %d  joints: %d",
+                restarts, (rss >= 0) ? String.format("%.1fMB", rss / 1e6) : "n/a",
+                (runtime.totalMemory() - runtime.freeMemory()) / 1e6, Field.getLiveWorldCount(),
+                field.getLiveBodyCount(), field.getLiveFixtureCount(), field.getLiveJointCount());
+    }
+
+    public static void main(String[] args) throws IOException {
+        int restarts = 10000;
+        int ticksPerRestart = 10;
+        int poolSize = 0;
+        long maxGrowthBytes = 32L << 20;
+        boolean fastRestart = false;
+        Map<String, Object> layoutMap = null;
+        for (int i=0; i<args.length; i++) {
+            switch (args[i]) {
+                case "-restarts":
+                    restarts = Integer.parseInt(args[++i]);
+                    break;
+                case "-ticks":
+                    ticksPerRestart = Integer.parseInt(args[++i]);
+                    break;
+                case "-pool":
+                    poolSize = Integer.parseInt(args[++i]);
+                    break;
+                case "-maxGrowthMB":
+                    maxGrowthBytes = Long.parseLong(args[++i]) << 20;
+                    break;
+                case "-fast":
+                    fastRestart = true;
+                    break;
+                default:
+                    String json = new String(Files.readAllBytes(Paths.get(args[i])), StandardCharsets.UTF_8);
+                    layoutMap = JSONUtils.mapFromJSONString(json);
+            }
+        }
+        if (layoutMap == null) {
+            layoutMap = FieldBenchmark.readBuiltInTable("table2.json");
+        }
+
+        WorldPool pool = new WorldPool(poolSize);
+        Field field = new Field();
+        field.setWorldPool(pool);
+        field.setAudioPlayer(AudioPlayer.NoOpPlayer.getInstance());
+        int reportInterval = Math.max(1, restarts / 10);
+        long firstReportedRss = -1;
+        long startNanos = System.nanoTime();
+        for (int r=1; r<=restarts; r++) {
+            if (fastRestart) {
+                field.restartLevel(layoutMap);
+            }
+            else {
+                field.resetForLevel(layoutMap);
+            }
+            field.startGame();
+            field.launchBall();
+            long fieldTickNanos = (long) (FRAME_NANOS * field.getTargetTimeRatio());
+            for (int t=0; t<ticksPerRestart; t++) {
+                field.tick(fieldTickNanos, 4);
+            }
+            if (r % reportInterval == 0) {
+                System.out.println(report(r, field));
+                if (firstReportedRss < 0) firstReportedRss = residentBytes();
+            }
+        }
+        field.dispose();
+        pool.clear();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long growth = (firstReportedRss >= 0) ? residentBytes() - firstReportedRss : 0;
+        System.out.println(String.format("%d restarts in %.2fs (%.2fms each), rss growth after first report: %.1fMB, live worlds after dispose: %d",
+                restarts, elapsedNanos / 1e9, elapsedNanos / 1e6 / restarts, growth / 1e6, Field.getLiveWorldCount()));
+        if (Field.getLiveWorldCount() != 0 || growth > maxGrowthBytes) {
+            System.exit(1);
+        }
+    }
+}
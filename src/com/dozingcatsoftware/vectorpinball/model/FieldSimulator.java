@@ -0,0 +1,202 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import com.badlogic.gdx.math.Vector2;
+import com.dozingcatsoftware.vectorpinball.elements.FlipperElement;
+import com.dozingcatsoftware.vectorpinball.util.JSONUtils;
+
+/**
+ * Runs a Field without a renderer or game thread, for unattended playthroughs. Unlike FieldDriver,
+ * this class doesn't sleep between frames; each call to step() advances the field by a fixed
+ * timestep, and runGame() plays a complete game as fast as the CPU allows. The field uses a
+ * ManualClock that advances with the simulation and a no-op AudioPlayer, so results don't depend
+ * on how fast the simulation runs.
+ */
+public class FieldSimulator {
+
+    /**
+     * Supplies input to a simulated game. Called before every tick; implementations can launch
+     * balls and engage or release flippers.
+     */
+    public static interface Controller {
+        void beforeTick(FieldSimulator simulator, Field field);
+    }
+
+    /** Summary of a simulated game, returned by runGame(). */
+    public static class Result {
+        public final long score;
+        public final int ballsLost;
+        public final long ticks;
+        public final long simulatedNanos;
+        public final long wallNanos;
+        public final boolean gameEnded;
+
+        Result(long score, int ballsLost, long ticks, long simulatedNanos, long wallNanos,
+                boolean gameEnded) {
+            this.score = score;
+            this.ballsLost = ballsLost;
+            this.ticks = ticks;
+            this.simulatedNanos = simulatedNanos;
+            this.wallNanos = wallNanos;
+            this.gameEnded = gameEnded;
+        }
+
+        /** Returns the number of seconds of game time simulated per second of real time. */
+        public double simulatedSecondsPerWallSecond() {
+            return (wallNanos > 0) ? ((double) simulatedNanos) / wallNanos : 0;
+        }
+
+        @Override public String toString() {
+            return String.format(
+                    "score: %d balls lost: %d ticks: %d simulated: %.1fs wall: %.3fs " +
+                    "ratio: %.1fx%s",
+                    score, ballsLost, ticks, simulatedNanos / 1e9, wallNanos / 1e9,
+                    simulatedSecondsPerWallSecond(), gameEnded ? "" : " (time limit reached)");
+        }
+    }
+
+    /**
+     * Default Controller: launches a ball whenever none are in play, and engages a side's
+     * flippers while a ball is moving down within reach of one of them.
+     */
+    public static class AutoPlayController implements Controller {
+        @Override public void beforeTick(FieldSimulator simulator, Field field) {
+            if (!field.getGameState().isGameInProgress()) return;
+            if (field.getBalls().isEmpty()) {
+                field.removeDeadBalls();
+                field.launchBall();
+            }
+            FieldLayout layout = field.getFieldLayout();
+            field.setLeftFlippersEngaged(isBallNearFlippers(field, layout.getLeftFlipperElements()));
+            field.setRightFlippersEngaged(isBallNearFlippers(field, layout.getRightFlipperElements()));
+        }
+
+        boolean isBallNearFlippers(Field field, List<FlipperElement> flippers) {
+            List<Ball> balls = field.getBalls();
+            float ballRadius = field.getFieldLayout().getBallRadius();
+            for (int i=0; i<flippers.size(); i++) {
+                FlipperElement flipper = flippers.get(i);
+                Vector2 anchor = flipper.getAnchorBody().getPosition();
+                float reach = Math.abs(flipper.getFlipperLength()) + 2*ballRadius;
+                for (int j=0; j<balls.size(); j++) {
+                    Ball ball = balls.get(j);
+                    // Let balls resting on a raised flipper roll off rather than holding them.
+                    if (ball.getLinearVelocity().y > -0.5f) continue;
+                    if (ball.getPosition().dst2(anchor) < reach*reach) return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static final double DEFAULT_FRAMES_PER_SECOND = 60;
+    static final int DEFAULT_TICK_ITERATIONS = 4;
+    // Safety limit so that a game where the ball never drains still finishes.
+    static final long DEFAULT_MAX_SIMULATED_NANOS = 30 * 60 * 1000000000L;
+
+    Field field;
+    Clock.ManualClock clock = new Clock.ManualClock();
+    Controller controller = new AutoPlayController();
+
+    long frameNanos;
+    long fieldTickNanos;
+    int tickIterations = DEFAULT_TICK_ITERATIONS;
+    long maxSimulatedNanos = DEFAULT_MAX_SIMULATED_NANOS;
+
+    long ticks;
+    int ballsLost;
+
+    public FieldSimulator(Map<String, Object> layoutMap) {
+        field = new Field();
+        field.setClock(clock);
+        field.setAudioPlayer(AudioPlayer.NoOpPlayer.getInstance());
+        field.resetForLevel(layoutMap);
+        setFramesPerSecond(DEFAULT_FRAMES_PER_SECOND);
+    }
+
+    /**
+     * Sets the simulated frame rate. Each tick advances the clock by one frame and the field by
+     * one frame multiplied by the layout's target time ratio, the same as FieldDriver does.
+     */
+    public void setFramesPerSecond(double fps) {
+        frameNanos = (long) (1000000000L / fps);
+        fieldTickNanos = (long) (frameNanos * field.getTargetTimeRatio());
+    }
+
+    /** Sets the number of Box2D world steps per tick, 4 by default. */
+    public void setTickIterations(int iters) {
+        tickIterations = iters;
+    }
+
+    /** Sets the maximum game time that runGame() will simulate before giving up. */
+    public void setMaxSimulatedSeconds(double seconds) {
+        maxSimulatedNanos = (long) (seconds * 1e9);
+    }
+
+    public void setController(Controller controller) {
+        this.controller = controller;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public int getBallsLost() {
+        return ballsLost;
+    }
+
+    /** Advances the field by a single fixed timestep. */
+    public void step() {
+        if (controller != null) {
+            controller.beforeTick(this, field);
+        }
+        // Counts every ball that drains, including those lost while other balls are in play.
+        int lostBefore = field.getLostBallCount();
+        clock.advanceNanos(frameNanos);
+        field.tick(fieldTickNanos, tickIterations);
+        ticks++;
+        ballsLost += field.getLostBallCount() - lostBefore;
+    }
+
+    /**
+     * Starts a new game and steps until it ends or the maximum simulated time is reached.
+     * Returns the final score and timing information.
+     */
+    public Result runGame() {
+        ticks = 0;
+        ballsLost = 0;
+        long startGameTime = field.getGameTime();
+        field.startGame();
+        field.removeDeadBalls();
+        field.launchBall();
+
+        long startNanos = System.nanoTime();
+        while (field.getGameState().isGameInProgress() &&
+                field.getGameTime() - startGameTime < maxSimulatedNanos) {
+            step();
+        }
+        long wallNanos = System.nanoTime() - startNanos;
+        return new Result(field.getScore(), ballsLost, ticks,
+                field.getGameTime() - startGameTime, wallNanos,
+                !field.getGameState().isGameInProgress());
+    }
+
+    /** Plays one game on each table JSON file given as an argument and prints the results. */
+    public static void main(String[] args) throws IOException {
+        for (String path : args) {
+            String json = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+            FieldSimulator simulator = new FieldSimulator(JSONUtils.mapFromJSONString(json));
+            System.out.println(path + ": " + simulator.runGame());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.dozingcatsoftware.vectorpinball.util.LatencyHistogram;
+
+/**
+ * Lock-free queue of player input commands, which any number of threads can add to and which
+ * Field.tick drains on the game thread before advancing the simulation. This lets UI threads
+ * send input without locking the field or calling into it while it's ticking. Each command
+ * records when it was added, and the delay until it's applied is recorded in a
+ * LatencyHistogram. Commands are the Replay input event types, plus LAUNCH_BALL_IF_NONE.
+ */
+public class InputQueue {
+
+    public static final int LEFT_FLIPPERS_ENGAGED = Replay.LEFT_FLIPPERS_ENGAGED;
+    public static final int LEFT_FLIPPERS_RELEASED = Replay.LEFT_FLIPPERS_RELEASED;
+    public static final int RIGHT_FLIPPERS_ENGAGED = Replay.RIGHT_FLIPPERS_ENGAGED;
+    public static final int RIGHT_FLIPPERS_RELEASED = Replay.RIGHT_FLIPPERS_RELEASED;
+    public static final int ALL_FLIPPERS_ENGAGED = Replay.ALL_FLIPPERS_ENGAGED;
+    public static final int ALL_FLIPPERS_RELEASED = Replay.ALL_FLIPPERS_RELEASED;
+    public static final int LAUNCH_BALL = Replay.LAUNCH_BALL;
+    public static final int REMOVE_DEAD_BALLS = Replay.REMOVE_DEAD_BALLS;
+    public static final int START_GAME = Replay.START_GAME;
+    // Launches a ball only if there are no balls in play when the command is applied.
+    public static final int LAUNCH_BALL_IF_NONE = 100;
+
+    static class Node {
+        final int command;
+        final long addedNanos;
+        volatile Node next;
+
+        Node(int command, long addedNanos) {
+            this.command = command;
+            this.addedNanos = addedNanos;
+        }
+    }
+
+    // Producers append at tail; the consumer removes after head, which is always a consumed node.
+    final AtomicReference<Node> tail;
+    Node head;
+    final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    public InputQueue() {
+        head = new Node(0, 0);
+        tail = new AtomicReference<>(head);
+    }
+
+    /** Adds a command. Can be called from any thread. */
+    public void add(int command) {
+        Node node = new Node(command, System.nanoTime());
+        Node previous = tail.getAndSet(node);
+        // Until this write the consumer stops at previous, so commands stay in order.
+        previous.next = node;
+    }
+
+    /**
+     * Applies all queued commands to the field in the order they were added, with Field.applyInput.
+     * Only called from the game thread, by Field.tick.
+     */
+    void drain(Field field) {
+        Node node = head.next;
+        if (node == null) return;
+        long now = System.nanoTime();
+        while (node != null) {
+            field.applyInput(node.command);
+            latencyHistogram.record(now - node.addedNanos);
+            head = node;
+            node = node.next;
+        }
+    }
+
+    /** Returns the histogram of times between commands being added and applied. */
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+}
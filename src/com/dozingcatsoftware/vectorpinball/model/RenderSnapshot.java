@@ -0,0 +1,450 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An IFieldRenderer that records draw calls into a display list so that they can be replayed to
+ * another renderer later, on any thread, compared with another frame, or serialized. After each
+ * physics step FieldDriver records the field with Field.recordRenderSnapshot, and publishes a
+ * snapshot interpolated between the last two steps; renderers draw the latest one from
+ * Field.getLatestRenderSnapshot instead of locking the field and drawing its elements directly.
+ * Snapshots are reused, so once their arrays have grown to fit the field recording doesn't
+ * allocate. A snapshot can refer to a static layer, another snapshot holding the drawing of
+ * elements that rarely change, which is drawn first and stays the same object until they do.
+ *
+ * Serialized form (big-endian): int command count, then for each command a type byte, the color
+ * as an int (see packColor), and its coordinates as doubles (for polygons, an int point count
+ * followed by the x and then the y coordinates). writeDeltaTo writes only the commands that
+ * differ from a previous frame, for cheaply sending frames to remote viewers.
+ */
+public class RenderSnapshot implements IFieldRenderer {
+
+    // Command types. Lines and circles take 4 and 3 coordinates, polygons a point count
+    // followed by the x coordinates and then the y coordinates.
+    static final byte LINE = 1;
+    static final byte FILL_CIRCLE = 2;
+    static final byte FRAME_CIRCLE = 3;
+    static final byte FILL_POLYGON = 4;
+
+    byte[] commands = new byte[256];
+    Color[] colors = new Color[256];
+    int commandCount;
+    double[] coordinates = new double[1024];
+    int coordinateCount;
+
+    RenderSnapshot staticLayer;
+
+    int width;
+    int height;
+    double relativeScale = 1;
+
+    // Colors created when reading serialized snapshots, by packed value.
+    Map<Integer, Color> colorsByPackedValue;
+
+    // Arrays passed to fillPolygon when replaying, indexed by number of points.
+    double[][] polygonXPoints = new double[0][];
+    double[][] polygonYPoints = new double[0][];
+
+    /**
+     * Clears all recorded commands, and copies the dimensions of the renderer that the snapshot
+     * will be drawn to so that elements can query them while recording.
+     */
+    public void begin(IFieldRenderer target) {
+        staticLayer = null;
+        commandCount = 0;
+        coordinateCount = 0;
+        width = target.getWidth();
+        height = target.getHeight();
+        relativeScale = target.getRelativeScale();
+    }
+
+    /** Returns the number of draw calls recorded since begin was called. */
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * Returns the static layer drawn under this snapshot, or null if there isn't one. The same
+     * object is returned until the static layer changes, so renderers can cache its rendering.
+     */
+    public RenderSnapshot getStaticLayer() {
+        return staticLayer;
+    }
+
+    /**
+     * Calls the methods of renderer that were called on the static layer and then on this
+     * snapshot, in the same order.
+     */
+    public void replay(IFieldRenderer renderer) {
+        if (staticLayer != null) staticLayer.replay(renderer);
+        replayWithoutStaticLayer(renderer);
+    }
+
+    /** Calls the methods of renderer that were called on this snapshot, excluding its static layer. */
+    public void replayWithoutStaticLayer(IFieldRenderer renderer) {
+        int c = 0;
+        for (int i=0; i<commandCount; i++) {
+            Color color = colors[i];
+            switch (commands[i]) {
+                case LINE:
+                    renderer.drawLine(coordinates[c], coordinates[c+1], coordinates[c+2], coordinates[c+3], color);
+                    c += 4;
+                    break;
+                case FILL_CIRCLE:
+                    renderer.fillCircle(coordinates[c], coordinates[c+1], coordinates[c+2], color);
+                    c += 3;
+                    break;
+                case FRAME_CIRCLE:
+                    renderer.frameCircle(coordinates[c], coordinates[c+1], coordinates[c+2], color);
+                    c += 3;
+                    break;
+                case FILL_POLYGON:
+                    int n = (int) coordinates[c++];
+                    double[] xPoints = polygonPointsArray(n, true);
+                    double[] yPoints = polygonPointsArray(n, false);
+                    System.arraycopy(coordinates, c, xPoints, 0, n);
+                    System.arraycopy(coordinates, c+n, yPoints, 0, n);
+                    renderer.fillPolygon(xPoints, yPoints, color);
+                    c += 2*n;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown command: " + commands[i]);
+            }
+        }
+    }
+
+    double[] polygonPointsArray(int n, boolean isX) {
+        if (n >= polygonXPoints.length) {
+            polygonXPoints = Arrays.copyOf(polygonXPoints, n + 1);
+            polygonYPoints = Arrays.copyOf(polygonYPoints, n + 1);
+        }
+        double[][] arrays = isX ? polygonXPoints : polygonYPoints;
+        if (arrays[n] == null) arrays[n] = new double[n];
+        return arrays[n];
+    }
+
+    void addCommand(byte command, Color color, int numCoordinates) {
+        if (commandCount == commands.length) {
+            commands = Arrays.copyOf(commands, 2*commandCount);
+            colors = Arrays.copyOf(colors, 2*commandCount);
+        }
+        commands[commandCount] = command;
+        colors[commandCount] = color;
+        commandCount++;
+        if (coordinateCount + numCoordinates > coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, Math.max(2*coordinates.length, coordinateCount + numCoordinates));
+        }
+    }
+
+    @Override public void drawLine(double x1, double y1, double x2, double y2, Color color) {
+        addCommand(LINE, color, 4);
+        coordinates[coordinateCount++] = x1;
+        coordinates[coordinateCount++] = y1;
+        coordinates[coordinateCount++] = x2;
+        coordinates[coordinateCount++] = y2;
+    }
+    @Override public void drawLine(float x1, float y1, float x2, float y2, Color color) {
+        drawLine((double)x1, y1, x2, y2, color);
+    }
+
+    @Override public void fillCircle(double cx, double cy, double radius, Color color) {
+        addCommand(FILL_CIRCLE, color, 3);
+        coordinates[coordinateCount++] = cx;
+        coordinates[coordinateCount++] = cy;
+        coordinates[coordinateCount++] = radius;
+    }
+    @Override public void fillCircle(float cx, float cy, float radius, Color color) {
+        fillCircle((double)cx, (double)cy, radius, color);
+    }
+
+    @Override public void frameCircle(double cx, double cy, double radius, Color color) {
+        addCommand(FRAME_CIRCLE, color, 3);
+        coordinates[coordinateCount++] = cx;
+        coordinates[coordinateCount++] = cy;
+        coordinates[coordinateCount++] = radius;
+    }
+    @Override public void frameCircle(float cx, float cy, float radius, Color color) {
+        frameCircle((double)cx, (double)cy, radius, color);
+    }
+
+    @Override public void fillPolygon(double[] xPoints, double[] yPoints, Color color) {
+        int n = xPoints.length;
+        addCommand(FILL_POLYGON, color, 1 + 2*n);
+        coordinates[coordinateCount++] = n;
+        System.arraycopy(xPoints, 0, coordinates, coordinateCount, n);
+        System.arraycopy(yPoints, 0, coordinates, coordinateCount + n, n);
+        coordinateCount += 2*n;
+    }
+
+    /** Returns the number of coordinates used by the command starting at the given offset. */
+    int coordinateCount(byte command, int offset) {
+        switch (command) {
+            case LINE:
+                return 4;
+            case FILL_CIRCLE:
+            case FRAME_CIRCLE:
+                return 3;
+            case FILL_POLYGON:
+                return 1 + 2 * (int) coordinates[offset];
+            default:
+                throw new IllegalStateException("Unknown command: " + command);
+        }
+    }
+
+    /** Returns a color as an int with 8 bits each for red, green, blue, and alpha, from high to low. */
+    public static int packColor(Color color) {
+        return (color.red << 24) | (color.green << 16) | (color.blue << 8) | color.alpha;
+    }
+
+    Color unpackColor(int packed) {
+        if (colorsByPackedValue == null) colorsByPackedValue = new HashMap<>();
+        Color color = colorsByPackedValue.get(packed);
+        if (color == null) {
+            color = Color.fromRGB(packed >>> 24, (packed >> 16) & 0xff, (packed >> 8) & 0xff, packed & 0xff);
+            colorsByPackedValue.put(packed, color);
+        }
+        return color;
+    }
+
+    /**
+     * Returns true if command i of this snapshot, whose coordinates start at offset, is the same
+     * as command j of other, whose coordinates start at otherOffset.
+     */
+    boolean commandEquals(int i, int offset, RenderSnapshot other, int j, int otherOffset) {
+        if (commands[i] != other.commands[j]) return false;
+        if (colors[i] != other.colors[j] && packColor(colors[i]) != packColor(other.colors[j])) return false;
+        int count = coordinateCount(commands[i], offset);
+        if (count != other.coordinateCount(other.commands[j], otherOffset)) return false;
+        for (int k=0; k<count; k++) {
+            if (coordinates[offset + k] != other.coordinates[otherOffset + k]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of commands in this snapshot that differ from the command at the same
+     * position in previous, including commands beyond the end of previous. Static layers aren't
+     * compared. Returns 0 if the snapshots draw the same thing.
+     */
+    public int countChangedCommands(RenderSnapshot previous) {
+        int changed = 0;
+        int offset = 0;
+        int previousOffset = 0;
+        for (int i=0; i<commandCount; i++) {
+            if (i >= previous.commandCount || !commandEquals(i, offset, previous, i, previousOffset)) {
+                changed++;
+            }
+            offset += coordinateCount(commands[i], offset);
+            if (i < previous.commandCount) {
+                previousOffset += previous.coordinateCount(previous.commands[i], previousOffset);
+            }
+        }
+        return changed;
+    }
+
+    /** Returns true if this snapshot and other draw the same commands, ignoring static layers. */
+    public boolean commandsEqual(RenderSnapshot other) {
+        return commandCount == other.commandCount && countChangedCommands(other) == 0;
+    }
+
+    void writeCommand(DataOutputStream out, int i, int offset) throws IOException {
+        out.writeByte(commands[i]);
+        out.writeInt(packColor(colors[i]));
+        if (commands[i] == FILL_POLYGON) {
+            int n = (int) coordinates[offset];
+            out.writeInt(n);
+            for (int k=1; k<=2*n; k++) {
+                out.writeDouble(coordinates[offset + k]);
+            }
+        }
+        else {
+            int count = coordinateCount(commands[i], offset);
+            for (int k=0; k<count; k++) {
+                out.writeDouble(coordinates[offset + k]);
+            }
+        }
+    }
+
+    void readCommand(DataInputStream in) throws IOException {
+        byte command = in.readByte();
+        Color color = unpackColor(in.readInt());
+        int count;
+        if (command == FILL_POLYGON) {
+            int n = in.readInt();
+            count = 1 + 2*n;
+            addCommand(command, color, count);
+            coordinates[coordinateCount] = n;
+            for (int k=1; k<count; k++) {
+                coordinates[coordinateCount + k] = in.readDouble();
+            }
+        }
+        else {
+            count = (command == LINE) ? 4 : 3;
+            if (command != LINE && command != FILL_CIRCLE && command != FRAME_CIRCLE) {
+                throw new IOException("Unknown command: " + command);
+            }
+            addCommand(command, color, count);
+            for (int k=0; k<count; k++) {
+                coordinates[coordinateCount + k] = in.readDouble();
+            }
+        }
+        coordinateCount += count;
+    }
+
+    void copyCommand(RenderSnapshot source, int i, int offset) {
+        int count = source.coordinateCount(source.commands[i], offset);
+        addCommand(source.commands[i], source.colors[i], count);
+        System.arraycopy(source.coordinates, offset, coordinates, coordinateCount, count);
+        coordinateCount += count;
+    }
+
+    /**
+     * Returns true if this snapshot and other have the same commands in the same order, with the
+     * same number of coordinates, so that commands at the same index draw the same thing.
+     */
+    boolean hasSameLayout(RenderSnapshot other) {
+        if (commandCount != other.commandCount || coordinateCount != other.coordinateCount) {
+            return false;
+        }
+        int offset = 0;
+        for (int i=0; i<commandCount; i++) {
+            if (commands[i] != other.commands[i]) return false;
+            int count = coordinateCount(commands[i], offset);
+            if (count != other.coordinateCount(other.commands[i], offset)) return false;
+            offset += count;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces this snapshot's contents with a drawing between from and to, which are the field
+     * after consecutive physics steps: fraction 0 draws from and 1 draws to. If both have the same
+     * layout of commands, their coordinates are interpolated, so moving balls and flippers are
+     * drawn part way between their positions. Otherwise, for example when a ball was added or
+     * removed or a drop target went down, commands can't be paired by index, and this draws to
+     * unchanged. Colors and the static layer are always taken from to.
+     */
+    public void interpolate(RenderSnapshot from, RenderSnapshot to, double fraction) {
+        staticLayer = to.staticLayer;
+        width = to.width;
+        height = to.height;
+        relativeScale = to.relativeScale;
+        commandCount = 0;
+        coordinateCount = 0;
+        boolean sameLayout = from.hasSameLayout(to);
+        int offset = 0;
+        for (int i=0; i<to.commandCount; i++) {
+            int count = to.coordinateCount(to.commands[i], offset);
+            copyCommand(to, i, offset);
+            if (sameLayout) {
+                // Polygon point counts are equal here, so they're unchanged by interpolating.
+                int start = coordinateCount - count;
+                for (int k=0; k<count; k++) {
+                    double a = from.coordinates[offset + k];
+                    coordinates[start + k] = a + (coordinates[start + k] - a) * fraction;
+                }
+            }
+            offset += count;
+        }
+    }
+
+    /** Writes this snapshot's commands, not including its static layer. */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(commandCount);
+        int offset = 0;
+        for (int i=0; i<commandCount; i++) {
+            writeCommand(out, i, offset);
+            offset += coordinateCount(commands[i], offset);
+        }
+    }
+
+    /** Replaces this snapshot's commands with those written by writeTo. Clears the static layer. */
+    public void readFrom(DataInputStream in) throws IOException {
+        staticLayer = null;
+        commandCount = 0;
+        coordinateCount = 0;
+        int count = in.readInt();
+        for (int i=0; i<count; i++) {
+            readCommand(in);
+        }
+    }
+
+    /**
+     * Writes the commands that differ from previous, which the reader must already have. The
+     * format is the total command count, the number of changed commands, and then each changed
+     * command's index followed by the command as written by writeTo.
+     */
+    public void writeDeltaTo(RenderSnapshot previous, DataOutputStream out) throws IOException {
+        out.writeInt(commandCount);
+        out.writeInt(countChangedCommands(previous));
+        int offset = 0;
+        int previousOffset = 0;
+        for (int i=0; i<commandCount; i++) {
+            if (i >= previous.commandCount || !commandEquals(i, offset, previous, i, previousOffset)) {
+                out.writeInt(i);
+                writeCommand(out, i, offset);
+            }
+            offset += coordinateCount(commands[i], offset);
+            if (i < previous.commandCount) {
+                previousOffset += previous.coordinateCount(previous.commands[i], previousOffset);
+            }
+        }
+    }
+
+    /**
+     * Replaces this snapshot's commands with those of previous updated by a delta written by
+     * writeDeltaTo. previous must not be this snapshot. Clears the static layer.
+     */
+    public void readDeltaFrom(RenderSnapshot previous, DataInputStream in) throws IOException {
+        if (previous == this) throw new IllegalArgumentException("previous must be a different snapshot");
+        staticLayer = null;
+        commandCount = 0;
+        coordinateCount = 0;
+        int count = in.readInt();
+        int changedCount = in.readInt();
+        int nextChanged = (changedCount > 0) ? in.readInt() : -1;
+        int previousOffset = 0;
+        for (int i=0; i<count; i++) {
+            if (i == nextChanged) {
+                readCommand(in);
+                changedCount--;
+                nextChanged = (changedCount > 0) ? in.readInt() : -1;
+            }
+            else {
+                if (i >= previous.commandCount) throw new IOException("Delta doesn't match previous snapshot");
+                copyCommand(previous, i, previousOffset);
+            }
+            if (i < previous.commandCount) {
+                previousOffset += previous.coordinateCount(previous.commands[i], previousOffset);
+            }
+        }
+    }
+
+    @Override public void doDraw() {
+        // Nothing to do, snapshots are drawn by calling replay.
+    }
+
+    @Override public int getWidth() {
+        return width;
+    }
+
+    @Override public int getHeight() {
+        return height;
+    }
+
+    @Override public double getRelativeScale() {
+        return relativeScale;
+    }
+
+    @Override public void setDebugMessage(String debugMessage) {
+    }
+
+    @Override public boolean canDraw() {
+        return true;
+    }
+}
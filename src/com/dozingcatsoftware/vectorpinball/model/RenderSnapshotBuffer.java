@@ -0,0 +1,50 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Triple buffer of RenderSnapshots passed from one writer thread to one reader thread without
+ * locking. The writer records into getWriteSnapshot and calls publish; the reader calls
+ * getLatestSnapshot, which returns the most recently published snapshot and is never written to
+ * until the reader calls getLatestSnapshot again. Neither thread waits for the other.
+ */
+public class RenderSnapshotBuffer {
+
+    // Set in the shared index when its snapshot was published and the reader hasn't taken it.
+    static final int FRESH = 4;
+    static final int INDEX_MASK = 3;
+
+    final RenderSnapshot[] snapshots = {new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot()};
+    // Index of the snapshot not currently owned by the writer or reader, plus the FRESH flag.
+    final AtomicInteger sharedIndex = new AtomicInteger(1);
+    int writeIndex = 0;
+    int readIndex = 2;
+    volatile long publishCount;
+
+    /** Returns the snapshot that the writer should record into next. Only call from the writer thread. */
+    public RenderSnapshot getWriteSnapshot() {
+        return snapshots[writeIndex];
+    }
+
+    /** Makes the write snapshot available to the reader. Only call from the writer thread. */
+    public void publish() {
+        writeIndex = sharedIndex.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+        publishCount++;
+    }
+
+    /**
+     * Returns the most recently published snapshot, or an empty snapshot if none has been
+     * published. Only call from the reader thread.
+     */
+    public RenderSnapshot getLatestSnapshot() {
+        if ((sharedIndex.get() & FRESH) != 0) {
+            readIndex = sharedIndex.getAndSet(readIndex) & INDEX_MASK;
+        }
+        return snapshots[readIndex];
+    }
+
+    /** Returns the number of snapshots published, for measuring how many the reader skipped. */
+    public long getPublishCount() {
+        return publishCount;
+    }
+}
@@ -0,0 +1,157 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+import com.dozingcatsoftware.vectorpinball.util.JSONUtils;
+
+/**
+ * A recorded game that can be replayed deterministically, created by ReplayRecorder and played
+ * by ReplayPlayer. Contains the random seed the Field was reset with, a hash of the layout, the
+ * final score, and a compact event stream. Each event is a varint count of ticks since the
+ * previous event, an event type byte, and for TICK_TIMING events the tick's nanoseconds,
+ * iterations, and flags as varints. Events apply before the tick they're recorded at, so a game
+ * with a few inputs per second takes a few KB.
+ *
+ * Binary format (big-endian): int MAGIC, byte VERSION, long randomSeed, long layoutHash,
+ * long finalScore, long ticks, int event byte count, event bytes.
+ */
+public class Replay {
+
+    static final int MAGIC = 0x56505250; // "VPRP"
+    // Increased whenever the event format or the physics of a layout changes, so older replays
+    // are rejected rather than misread or played differently. 2: TICK_TIMING events have flags.
+    // 3: wall paths and arcs are chain shapes.
+    static final int VERSION = 3;
+
+    // Event types.
+    static final int END = 0;
+    static final int TICK_TIMING = 1;
+    static final int LEFT_FLIPPERS_ENGAGED = 2;
+    static final int LEFT_FLIPPERS_RELEASED = 3;
+    static final int RIGHT_FLIPPERS_ENGAGED = 4;
+    static final int RIGHT_FLIPPERS_RELEASED = 5;
+    static final int ALL_FLIPPERS_ENGAGED = 6;
+    static final int ALL_FLIPPERS_RELEASED = 7;
+    static final int LAUNCH_BALL = 8;
+    static final int REMOVE_DEAD_BALLS = 9;
+    static final int START_GAME = 10;
+
+    // Flags for TICK_TIMING events.
+    static final int TICK_FLAG_ADAPTIVE_STEPPING = 1;
+
+    public final long randomSeed;
+    public final long layoutHash;
+    public final long finalScore;
+    public final long ticks;
+    final byte[] events;
+
+    Replay(long randomSeed, long layoutHash, long finalScore, long ticks, byte[] events) {
+        this.randomSeed = randomSeed;
+        this.layoutHash = layoutHash;
+        this.finalScore = finalScore;
+        this.ticks = ticks;
+        this.events = events;
+    }
+
+    /**
+     * Returns a hash of the layout, computed from its JSON representation with sorted keys so
+     * that equal maps have equal hashes.
+     */
+    public static long layoutHash(Map<String, Object> layoutMap) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(
+                    JSONUtils.jsonStringFromObject(layoutMap).getBytes(StandardCharsets.UTF_8));
+            long result = 0;
+            for (int i=0; i<8; i++) {
+                result = (result << 8) | (hash[i] & 0xff);
+            }
+            return result;
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /** Returns the size in bytes of this replay when written with writeTo. */
+    public int sizeInBytes() {
+        return 4 + 1 + 8*4 + 4 + events.length;
+    }
+
+    public void writeTo(OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(randomSeed);
+        out.writeLong(layoutHash);
+        out.writeLong(finalScore);
+        out.writeLong(ticks);
+        out.writeInt(events.length);
+        out.write(events);
+        out.flush();
+    }
+
+    public static Replay readFrom(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a replay file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported replay version: " + version);
+        }
+        long randomSeed = in.readLong();
+        long layoutHash = in.readLong();
+        long finalScore = in.readLong();
+        long ticks = in.readLong();
+        byte[] events = new byte[in.readInt()];
+        in.readFully(events);
+        return new Replay(randomSeed, layoutHash, finalScore, ticks, events);
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Sequential reader for the event stream. */
+    static class EventReader {
+        final byte[] bytes;
+        int position = 0;
+
+        EventReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        boolean hasMore() {
+            return position < bytes.length;
+        }
+
+        int readByte() {
+            return bytes[position++] & 0xff;
+        }
+
+        long readVarLong() {
+            long result = 0;
+            int shift = 0;
+            while (true) {
+                int b = readByte();
+                result |= ((long) (b & 0x7F)) << shift;
+                if ((b & 0x80) == 0) return result;
+                shift += 7;
+            }
+        }
+    }
+}
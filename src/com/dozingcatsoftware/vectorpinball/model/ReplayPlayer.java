@@ -0,0 +1,105 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import com.dozingcatsoftware.vectorpinball.util.JSONUtils;
+
+/**
+ * Plays a Replay on a new headless Field as fast as possible, applying the recorded inputs
+ * before the same ticks they originally preceded, and reports whether the final score matches
+ * the recorded score.
+ */
+public class ReplayPlayer {
+
+    /** Outcome of playing a replay. */
+    public static class Result {
+        public final long expectedScore;
+        public final long score;
+        public final long ticks;
+        public final long wallNanos;
+
+        Result(long expectedScore, long score, long ticks, long wallNanos) {
+            this.expectedScore = expectedScore;
+            this.score = score;
+            this.ticks = ticks;
+            this.wallNanos = wallNanos;
+        }
+
+        public boolean scoreMatches() {
+            return score == expectedScore;
+        }
+
+        @Override public String toString() {
+            return String.format("%s score: %d expected: %d ticks: %d wall: %.3fs",
+                    scoreMatches() ? "OK" : "MISMATCH", score, expectedScore, ticks, wallNanos / 1e9);
+        }
+    }
+
+    /**
+     * Plays the replay on the layout it was recorded with. Throws IllegalArgumentException if
+     * the layout's hash doesn't match the one in the replay.
+     */
+    public static Result play(Replay replay, Map<String, Object> layoutMap) {
+        if (Replay.layoutHash(layoutMap) != replay.layoutHash) {
+            throw new IllegalArgumentException("Replay was recorded with a different layout");
+        }
+        Clock.ManualClock clock = new Clock.ManualClock();
+        Field field = new Field();
+        field.setClock(clock);
+        field.setAudioPlayer(AudioPlayer.NoOpPlayer.getInstance());
+        field.setRandomSeed(replay.randomSeed);
+        field.resetForLevel(layoutMap);
+
+        Replay.EventReader reader = new Replay.EventReader(replay.events);
+        long tickNanos = 0;
+        int tickIterations = 0;
+        long ticks = 0;
+        long startNanos = System.nanoTime();
+        while (reader.hasMore()) {
+            long ticksBeforeEvent = reader.readVarLong();
+            for (long i=0; i<ticksBeforeEvent; i++) {
+                clock.advanceNanos((long) (tickNanos / field.getTargetTimeRatio()));
+                field.tick(tickNanos, tickIterations);
+                ticks++;
+            }
+            int type = reader.readByte();
+            if (type == Replay.END) break;
+            switch (type) {
+                case Replay.TICK_TIMING:
+                    tickNanos = reader.readVarLong();
+                    tickIterations = (int) reader.readVarLong();
+                    long flags = reader.readVarLong();
+                    field.setAdaptiveStepping((flags & Replay.TICK_FLAG_ADAPTIVE_STEPPING) != 0);
+                    break;
+                default:
+                    // Other events are the inputs that Field.applyInput handles.
+                    field.applyInput(type);
+                    break;
+            }
+        }
+        Result result = new Result(replay.finalScore, field.getScore(), ticks, System.nanoTime() - startNanos);
+        field.dispose();
+        return result;
+    }
+
+    /**
+     * Plays a replay file on a table JSON file and prints the result. Exits with status 1 if the
+     * score doesn't match. Usage: ReplayPlayer replay.bin table.json
+     */
+    public static void main(String[] args) throws IOException {
+        Replay replay;
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(Paths.get(args[0])))) {
+            replay = Replay.readFrom(input);
+        }
+        String json = new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8);
+        Result result = play(replay, JSONUtils.mapFromJSONString(json));
+        System.out.println(result);
+        if (!result.scoreMatches()) System.exit(1);
+    }
+}
@@ -0,0 +1,79 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+/**
+ * Records a Replay of a Field. Set with Field.setReplayRecorder before calling resetForLevel; the
+ * Field then reports its seed and layout when reset, each tick's duration, and calls to its input
+ * methods (flippers, launchBall, removeDeadBalls, startGame) made from outside of tick(). Calls
+ * made by delegates and elements during a tick aren't recorded because playback repeats them.
+ * Methods are synchronized because input can arrive from the UI thread while the game thread is
+ * ticking; input methods should still be called while holding the Field's lock so that they
+ * happen between ticks.
+ */
+public class ReplayRecorder {
+
+    ByteArrayOutputStream events = new ByteArrayOutputStream();
+    long randomSeed;
+    long layoutHash;
+    long ticks;
+    long lastEventTick;
+    long lastTickNanos = -1;
+    int lastTickIterations = -1;
+    int lastTickFlags = -1;
+
+    /** Starts a new recording, discarding any previous one. Called from Field.resetForLevel. */
+    synchronized void begin(long seed, Map<String, Object> layoutMap) {
+        events.reset();
+        randomSeed = seed;
+        layoutHash = Replay.layoutHash(layoutMap);
+        ticks = 0;
+        lastEventTick = 0;
+        lastTickNanos = -1;
+        lastTickIterations = -1;
+        lastTickFlags = -1;
+    }
+
+    void writeEventHeader(int type) {
+        Replay.writeVarLong(events, ticks - lastEventTick);
+        events.write(type);
+        lastEventTick = ticks;
+    }
+
+    /** Called at the start of each tick. Only records the timing when it changes. */
+    synchronized void recordTick(long nanos, int iters, boolean adaptiveStepping) {
+        int flags = adaptiveStepping ? Replay.TICK_FLAG_ADAPTIVE_STEPPING : 0;
+        if (nanos != lastTickNanos || iters != lastTickIterations || flags != lastTickFlags) {
+            writeEventHeader(Replay.TICK_TIMING);
+            Replay.writeVarLong(events, nanos);
+            Replay.writeVarLong(events, iters);
+            Replay.writeVarLong(events, flags);
+            lastTickNanos = nanos;
+            lastTickIterations = iters;
+            lastTickFlags = flags;
+        }
+        ticks++;
+    }
+
+    synchronized void recordInput(int type) {
+        writeEventHeader(type);
+    }
+
+    /** Returns the number of ticks recorded since the last call to resetForLevel. */
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns a Replay of everything recorded since the Field was last reset, ending with the
+     * field's current score. Recording can continue afterwards.
+     */
+    public synchronized Replay finish(Field field) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(events.size() + 2);
+        output.write(events.toByteArray(), 0, events.size());
+        Replay.writeVarLong(output, ticks - lastEventTick);
+        output.write(Replay.END);
+        return new Replay(randomSeed, layoutHash, field.getScore(), ticks, output.toByteArray());
+    }
+}
@@ -0,0 +1,164 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.dozingcatsoftware.vectorpinball.util.CollectionUtils;
+import com.dozingcatsoftware.vectorpinball.util.JSONUtils;
+
+/**
+ * Plays many independent headless games concurrently using a fixed pool of worker threads. Each
+ * game gets its own Field and Box2D World, created on the worker thread that runs it, so no
+ * locking is needed between games and throughput scales with the number of cores.
+ */
+public class SimulationFarm {
+
+    /** Result of a single game, identifying the layout it was played on. */
+    public static class GameResult {
+        public final String layoutName;
+        public final int gameIndex;
+        public final FieldSimulator.Result result;
+
+        GameResult(String layoutName, int gameIndex, FieldSimulator.Result result) {
+            this.layoutName = layoutName;
+            this.gameIndex = gameIndex;
+            this.result = result;
+        }
+
+        @Override public String toString() {
+            return layoutName + " #" + gameIndex + ": " + result;
+        }
+    }
+
+    List<String> layoutNames = new ArrayList<String>();
+    List<Map<String, Object>> layoutMaps = new ArrayList<Map<String, Object>>();
+    int numThreads = Runtime.getRuntime().availableProcessors();
+    double maxSimulatedSeconds = -1;
+
+    long lastRunWallNanos;
+
+    /** Adds a layout to be played. Layouts are played in the order they were added. */
+    public void addLayout(String name, Map<String, Object> layoutMap) {
+        layoutNames.add(name);
+        layoutMaps.add(layoutMap);
+    }
+
+    /** Sets the number of worker threads. Defaults to the number of available processors. */
+    public void setNumberOfThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        numThreads = threads;
+    }
+
+    public void setMaxSimulatedSeconds(double seconds) {
+        maxSimulatedSeconds = seconds;
+    }
+
+    /** Returns the real time taken by the most recent call to run(). */
+    public long getLastRunWallNanos() {
+        return lastRunWallNanos;
+    }
+
+    GameResult playGame(int layoutIndex, int gameIndex) {
+        // Each game gets its own copy of the layout so that nothing is shared between threads.
+        FieldSimulator simulator =
+                new FieldSimulator(CollectionUtils.mutableDeepCopyOfMap(layoutMaps.get(layoutIndex)));
+        if (maxSimulatedSeconds > 0) {
+            simulator.setMaxSimulatedSeconds(maxSimulatedSeconds);
+        }
+        return new GameResult(layoutNames.get(layoutIndex), gameIndex, simulator.runGame());
+    }
+
+    /**
+     * Plays gamesPerLayout games on each layout and returns the results, grouped by layout in
+     * the order the layouts were added. Blocks until all games have finished. If a game throws
+     * an exception, the remaining games are cancelled and the exception is rethrown.
+     */
+    public List<GameResult> run(int gamesPerLayout) {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            int count = 0;
+            @Override public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SimulationFarm-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long startNanos = System.nanoTime();
+        try {
+            List<Future<GameResult>> futures = new ArrayList<Future<GameResult>>();
+            for (int i=0; i<layoutMaps.size(); i++) {
+                for (int j=0; j<gamesPerLayout; j++) {
+                    final int layoutIndex = i;
+                    final int gameIndex = j;
+                    futures.add(executor.submit(() -> playGame(layoutIndex, gameIndex)));
+                }
+            }
+            List<GameResult> results = new ArrayList<GameResult>();
+            for (Future<GameResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        }
+        catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+        finally {
+            executor.shutdownNow();
+            lastRunWallNanos = System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * Plays games on the table JSON files given as arguments and prints a summary for each table.
+     * Usage: SimulationFarm [-games N] [-threads N] table.json...
+     */
+    public static void main(String[] args) throws IOException {
+        SimulationFarm farm = new SimulationFarm();
+        int gamesPerLayout = 10;
+        for (int i=0; i<args.length; i++) {
+            if ("-games".equals(args[i])) {
+                gamesPerLayout = Integer.parseInt(args[++i]);
+            }
+            else if ("-threads".equals(args[i])) {
+                farm.setNumberOfThreads(Integer.parseInt(args[++i]));
+            }
+            else {
+                String json = new String(Files.readAllBytes(Paths.get(args[i])), StandardCharsets.UTF_8);
+                farm.addLayout(args[i], JSONUtils.mapFromJSONString(json));
+            }
+        }
+
+        List<GameResult> results = farm.run(gamesPerLayout);
+        long totalSimulatedNanos = 0;
+        for (String name : farm.layoutNames) {
+            long totalScore = 0;
+            int games = 0;
+            for (GameResult gr : results) {
+                if (!gr.layoutName.equals(name)) continue;
+                totalScore += gr.result.score;
+                totalSimulatedNanos += gr.result.simulatedNanos;
+                games++;
+            }
+            System.out.println(String.format("%s: %d games, average score %d",
+                    name, games, (games > 0) ? totalScore / games : 0));
+        }
+        double wallSeconds = farm.getLastRunWallNanos() / 1e9;
+        System.out.println(String.format("%d games on %d threads in %.2fs, %.1f simulated s/s",
+                results.size(), farm.numThreads, wallSeconds, totalSimulatedNanos / 1e9 / wallSeconds));
+    }
+}
@@ -0,0 +1,192 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.util.Arrays;
+
+/**
+ * Hashed timer wheel for actions scheduled in game time, used by Field.scheduleAction. Entries
+ * are stored in parallel primitive arrays and linked into one of a fixed number of slots based
+ * on their due time, so scheduling is O(1) and doesn't allocate once the arrays have grown to
+ * the maximum number of pending actions. Each scheduled action gets a handle which can be passed
+ * to cancel(); handles include a generation count so that a stale handle can't cancel a later
+ * action that reuses the same entry.
+ *
+ * Actions due in the same slot (about 17 milliseconds of game time) may run in any order
+ * relative to each other; actions in earlier slots always run first.
+ */
+public class TimerWheel {
+
+    /** Value that is never returned as a handle, for callers that need a "no action" value. */
+    public static final long NO_HANDLE = 0;
+
+    // Slots are 2^24 nanoseconds (~16.8ms) wide, 256 slots cover ~4.3 seconds. Actions further in
+    // the future stay in their slot until enough time has passed.
+    static final int SLOT_SHIFT = 24;
+    static final int NUM_SLOTS = 256;
+    static final int SLOT_MASK = NUM_SLOTS - 1;
+    static final int INITIAL_CAPACITY = 32;
+
+    final int[] slotHeads = new int[NUM_SLOTS];
+
+    long[] actionTimes = new long[INITIAL_CAPACITY];
+    Runnable[] actions = new Runnable[INITIAL_CAPACITY];
+    int[] nextEntries = new int[INITIAL_CAPACITY];
+    int[] generations = new int[INITIAL_CAPACITY];
+
+    int freeHead = -1;
+    int capacityUsed = 0;
+    int size = 0;
+    // Slot containing the time of the last call to runDueActions; earlier slots are empty.
+    long processedSlot = 0;
+
+    public TimerWheel() {
+        Arrays.fill(slotHeads, -1);
+        Arrays.fill(generations, 1);
+    }
+
+    /** Returns the number of actions that are scheduled and not yet run or cancelled. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the earliest time of any scheduled action, or Long.MAX_VALUE if there are none.
+     * Checks every entry, so it's meant for occasional use such as when the field is idle.
+     */
+    public long nextActionTime() {
+        long result = Long.MAX_VALUE;
+        for (int i=0; i<capacityUsed; i++) {
+            if (actions[i] != null && actionTimes[i] < result) {
+                result = actionTimes[i];
+            }
+        }
+        return result;
+    }
+
+    /** Removes all scheduled actions and invalidates all outstanding handles. */
+    public void clear() {
+        for (int i=0; i<capacityUsed; i++) {
+            if (actions[i] != null) {
+                actions[i] = null;
+                generations[i]++;
+            }
+        }
+        Arrays.fill(slotHeads, -1);
+        freeHead = -1;
+        capacityUsed = 0;
+        size = 0;
+        processedSlot = 0;
+    }
+
+    int allocateEntry() {
+        if (freeHead >= 0) {
+            int index = freeHead;
+            freeHead = nextEntries[index];
+            return index;
+        }
+        if (capacityUsed == actions.length) {
+            int newCapacity = 2 * actions.length;
+            actionTimes = Arrays.copyOf(actionTimes, newCapacity);
+            actions = Arrays.copyOf(actions, newCapacity);
+            nextEntries = Arrays.copyOf(nextEntries, newCapacity);
+            generations = Arrays.copyOf(generations, newCapacity);
+            Arrays.fill(generations, capacityUsed, newCapacity, 1);
+        }
+        return capacityUsed++;
+    }
+
+    void freeEntry(int index) {
+        actions[index] = null;
+        generations[index]++;
+        nextEntries[index] = freeHead;
+        freeHead = index;
+        size--;
+    }
+
+    void linkIntoSlot(int index, long slot) {
+        int slotIndex = (int) (slot & SLOT_MASK);
+        nextEntries[index] = slotHeads[slotIndex];
+        slotHeads[slotIndex] = index;
+    }
+
+    /**
+     * Schedules the action to run at the first call to runDueActions with a time of at least
+     * actionTime. The same Runnable may be scheduled multiple times. Returns a handle that can
+     * be passed to cancel().
+     */
+    public long schedule(long actionTime, Runnable action) {
+        if (action == null) {
+            throw new IllegalArgumentException("action must not be null");
+        }
+        int index = allocateEntry();
+        actionTimes[index] = actionTime;
+        actions[index] = action;
+        size++;
+        linkIntoSlot(index, Math.max(actionTime >> SLOT_SHIFT, processedSlot));
+        return (((long) generations[index]) << 32) | index;
+    }
+
+    /**
+     * Cancels the action with the given handle. Returns true if the action was pending, false if
+     * it had already run or been cancelled.
+     */
+    public boolean cancel(long handle) {
+        int index = (int) handle;
+        int generation = (int) (handle >>> 32);
+        if (index < 0 || index >= capacityUsed) return false;
+        if (generations[index] != generation || actions[index] == null) return false;
+        // Leave the entry linked into its slot; runDueActions frees it when it reaches the slot.
+        actions[index] = null;
+        generations[index]++;
+        size--;
+        return true;
+    }
+
+    /**
+     * Runs all actions whose scheduled time is less than or equal to the given time. Actions may
+     * schedule or cancel other actions; newly scheduled actions that are already due are run
+     * before this method returns.
+     */
+    public void runDueActions(long time) {
+        long currentSlot = time >> SLOT_SHIFT;
+        // If more than a full rotation has passed, every slot needs to be checked once.
+        long firstSlot = Math.max(processedSlot, currentSlot - SLOT_MASK);
+        for (long slot = firstSlot; slot < currentSlot; slot++) {
+            runDueActionsInSlot(slot, time);
+        }
+        processedSlot = currentSlot;
+        // Actions run from the current slot can schedule more actions due in the current slot.
+        while (runDueActionsInSlot(currentSlot, time)) {}
+    }
+
+    /**
+     * Runs and removes due actions in a slot, and frees entries for cancelled actions. Returns
+     * true if any actions were run.
+     */
+    boolean runDueActionsInSlot(long slot, long time) {
+        int slotIndex = (int) (slot & SLOT_MASK);
+        // Detach the slot's list so actions that schedule into this slot don't affect iteration.
+        int index = slotHeads[slotIndex];
+        slotHeads[slotIndex] = -1;
+        boolean ranAction = false;
+        while (index >= 0) {
+            int next = nextEntries[index];
+            Runnable action = actions[index];
+            if (action == null) {
+                // Cancelled; the generation was already incremented and size decremented.
+                nextEntries[index] = freeHead;
+                freeHead = index;
+            }
+            else if (actionTimes[index] <= time) {
+                freeEntry(index);
+                action.run();
+                ranAction = true;
+            }
+            else {
+                nextEntries[index] = slotHeads[slotIndex];
+                slotHeads[slotIndex] = index;
+            }
+            index = next;
+        }
+        return ranAction;
+    }
+}
@@ -0,0 +1,97 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.ContactListener;
+import com.badlogic.gdx.physics.box2d.Joint;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Owns the native Box2D worlds used by Fields. A World's bodies, fixtures, and joints live
+ * outside the Java heap and are only freed by World.dispose, so every world obtained from a pool
+ * must be released to it. A pool keeps up to maxIdleWorlds released worlds, with all their bodies
+ * and joints destroyed, and hands them out again instead of creating new native worlds; with
+ * maxIdleWorlds of 0 released worlds are disposed immediately. Tracks the number of native worlds
+ * that have been created and not yet disposed, across all pools. Thread safe.
+ */
+public class WorldPool {
+
+    /** Pool that doesn't keep any worlds, used by fields unless they're given another pool. */
+    public static final WorldPool UNPOOLED = new WorldPool(0);
+
+    static final AtomicInteger liveWorldCount = new AtomicInteger();
+
+    final int maxIdleWorlds;
+    final ArrayDeque<World> idleWorlds = new ArrayDeque<>();
+    // Reused when destroying the bodies and joints of released worlds.
+    final Array<Body> bodies = new Array<>();
+    final Array<Joint> joints = new Array<>();
+
+    public WorldPool(int maxIdleWorlds) {
+        this.maxIdleWorlds = maxIdleWorlds;
+    }
+
+    /** Returns an empty world with the given gravity and contact listener. */
+    public synchronized World obtain(Vector2 gravity, boolean doSleep, ContactListener listener) {
+        World world = idleWorlds.pollFirst();
+        if (world == null) {
+            world = new World(gravity, doSleep);
+            liveWorldCount.incrementAndGet();
+        }
+        else {
+            world.setGravity(gravity);
+            world.setAutoClearForces(true);
+        }
+        world.setContactListener(listener);
+        return world;
+    }
+
+    /**
+     * Returns a world obtained from this pool. It's emptied and kept for reuse if there's room in
+     * the pool, and otherwise disposed. Its bodies, fixtures, and joints must not be used afterward.
+     */
+    public synchronized void release(World world) {
+        if (world == null) return;
+        if (idleWorlds.size() < maxIdleWorlds && !world.isLocked()) {
+            world.setContactListener(null);
+            // Joints first; destroying a body also destroys its joints, which would leave them stale in the array.
+            world.getJoints(joints);
+            for (Joint joint : joints) {
+                world.destroyJoint(joint);
+            }
+            joints.clear();
+            world.getBodies(bodies);
+            for (Body body : bodies) {
+                world.destroyBody(body);
+            }
+            bodies.clear();
+            idleWorlds.addLast(world);
+        }
+        else {
+            world.dispose();
+            liveWorldCount.decrementAndGet();
+        }
+    }
+
+    /** Disposes all idle worlds in the pool. */
+    public synchronized void clear() {
+        World world;
+        while ((world = idleWorlds.pollFirst()) != null) {
+            world.dispose();
+            liveWorldCount.decrementAndGet();
+        }
+    }
+
+    public synchronized int getIdleWorldCount() {
+        return idleWorlds.size();
+    }
+
+    /** Returns the number of native worlds created by any pool and not yet disposed, including idle ones. */
+    public static int getLiveWorldCount() {
+        return liveWorldCount.get();
+    }
+}
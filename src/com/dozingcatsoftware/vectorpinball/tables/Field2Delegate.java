@@ -10,11 +10,15 @@ import com.dozingcatsoftware.vectorpinball.elements.WallElement;
 import com.dozingcatsoftware.vectorpinball.model.Ball;
 import com.dozingcatsoftware.vectorpinball.model.BaseFieldDelegate;
 import com.dozingcatsoftware.vectorpinball.model.Field;
+import com.dozingcatsoftware.vectorpinball.util.NumberedStrings;
 
 public class Field2Delegate extends BaseFieldDelegate {
 
 	static final double TAU = 2*Math.PI; // pi is wrong
 
+	// The multiplier is a double, which is always a whole number and shown as "2.0x Multiplier".
+	static final NumberedStrings MULTIPLIER_MESSAGES = new NumberedStrings("", ".0x Multiplier", 99);
+
 	static class RotatingGroup {
 		String[] elementIDs;
 		double centerX, centerY;
@@ -94,16 +98,33 @@ public class Field2Delegate extends BaseFieldDelegate {
 		}
 	}
 
-	void startMultiball(final Field field) {
-		field.showGameMessage("Multiball!", 2000);
-		Runnable launchBall = new Runnable() {
+	// Scheduled actions, created when the game starts rather than while the field is ticking.
+	Runnable launchMultiballBall;
+	Runnable restoreLeftTubeBarrier;
+	long restoreLeftTubeBarrierHandle;
+
+	void createScheduledActions(final Field field) {
+		if (launchMultiballBall!=null) return;
+		launchMultiballBall = new Runnable() {
 			@Override
-            public void run() {
+			public void run() {
 				if (field.getBalls().size()<3) field.launchBall();
 			}
 		};
-		field.scheduleAction(1000, launchBall);
-		field.scheduleAction(3500, launchBall);
+		restoreLeftTubeBarrier = new Runnable() {
+			@Override
+			public void run() {
+				WallElement barrier = (WallElement)field.getFieldElementById("LeftTubeBarrier");
+				barrier.setRetracted(false);
+			}
+		};
+	}
+
+	void startMultiball(final Field field) {
+		field.showGameMessage("Multiball!", 2000);
+		createScheduledActions(field);
+		field.scheduleAction(1000, launchMultiballBall);
+		field.scheduleAction(3500, launchMultiballBall);
 	}
 
 	/** Always return true so the rotating bumpers animate smoothly */
@@ -117,7 +138,7 @@ public class Field2Delegate extends BaseFieldDelegate {
 		// rollover groups increment field multiplier when all rollovers are activated, also reset to inactive
 		rolloverGroup.setAllRolloversActivated(false);
 		field.getGameState().incrementScoreMultiplier();
-		field.showGameMessage(field.getGameState().getScoreMultiplier() + "x Multiplier", 1500);
+		field.showGameMessage(MULTIPLIER_MESSAGES.get((long) field.getGameState().getScoreMultiplier()), 1500);
 	}
 
 	@Override
@@ -201,19 +222,17 @@ public class Field2Delegate extends BaseFieldDelegate {
 		else if ("LeftTubeSensor".equals(sensorID)) {
 			if (ball.getLinearVelocity().y > 0) {
 				// ball going up, retract barrier after delay
-				field.scheduleAction(1000, new Runnable() {
-					@Override
-                    public void run() {
-						WallElement barrier = (WallElement)field.getFieldElementById("LeftTubeBarrier");
-						barrier.setRetracted(false);
-					}
-				});
+				createScheduledActions(field);
+				// Restart the delay if the barrier is already scheduled to be restored.
+				field.cancelScheduledAction(restoreLeftTubeBarrierHandle);
+				restoreLeftTubeBarrierHandle = field.scheduleAction(1000, restoreLeftTubeBarrier);
 			}
 		}
 	}
 
 	@Override
 	public void gameStarted(Field field) {
+		createScheduledActions(field);
 		setLaunchBarrierEnabled(field, false);
 	}
 
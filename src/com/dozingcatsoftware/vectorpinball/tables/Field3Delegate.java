@@ -16,6 +16,7 @@ import com.dozingcatsoftware.vectorpinball.model.Ball;
 import com.dozingcatsoftware.vectorpinball.model.BaseFieldDelegate;
 import com.dozingcatsoftware.vectorpinball.model.Color;
 import com.dozingcatsoftware.vectorpinball.model.Field;
+import com.dozingcatsoftware.vectorpinball.util.NumberedStrings;
 
 public class Field3Delegate extends BaseFieldDelegate {
 
@@ -90,6 +91,8 @@ public class Field3Delegate extends BaseFieldDelegate {
 
     static Random RAND = new Random();
 
+    static final NumberedStrings MULTIPLIER_MESSAGES = new NumberedStrings("", "x Multiplier", 99);
+
     long baseBumperBonusDurationNanos;
     long bumperBonusDurationNanos;
 
@@ -164,7 +167,7 @@ public class Field3Delegate extends BaseFieldDelegate {
             // rollover groups increment field multiplier when all rollovers are activated, also reset to inactive
             rolloverGroup.setAllRolloversActivated(false);
             field.getGameState().incrementScoreMultiplier();
-            field.showGameMessage(((int)field.getGameState().getScoreMultiplier()) + "x Multiplier", 1500);
+            field.showGameMessage(MULTIPLIER_MESSAGES.get((int) field.getGameState().getScoreMultiplier()), 1500);
         }
     }
 
@@ -278,6 +281,7 @@ public class Field3Delegate extends BaseFieldDelegate {
 
     @Override
     public void gameStarted(Field field) {
+        createLaunchMultiballBall(field);
         setLaunchBarrierEnabled(field, false);
         resetState(field);
         multiballStatus = MultiballStatus.INACTIVE;
@@ -310,10 +314,13 @@ public class Field3Delegate extends BaseFieldDelegate {
         ((RolloverGroupElement) field.getFieldElementById("BumperIndicator")).setAllRolloversActivated(ready);
     }
 
-    void startMultiball(final Field field) {
-        field.showGameMessage("Multiball!", 2000);
-        multiballStatus = MultiballStatus.PENDING;
-        Runnable launchBall = new Runnable() {
+    // Created when the game starts and reused for every multiball, so starting one during a tick
+    // doesn't allocate.
+    Runnable launchMultiballBall;
+
+    void createLaunchMultiballBall(final Field field) {
+        if (launchMultiballBall != null) return;
+        launchMultiballBall = new Runnable() {
             @Override
             public void run() {
                 if (field.getBalls().size()<3) field.launchBall();
@@ -323,8 +330,14 @@ public class Field3Delegate extends BaseFieldDelegate {
                 }
             }
         };
-        field.scheduleAction(1000, launchBall);
-        field.scheduleAction(3500, launchBall);
+    }
+
+    void startMultiball(final Field field) {
+        field.showGameMessage("Multiball!", 2000);
+        multiballStatus = MultiballStatus.PENDING;
+        createLaunchMultiballBall(field);
+        field.scheduleAction(1000, launchMultiballBall);
+        field.scheduleAction(3500, launchMultiballBall);
 
         // Increase bonuses past normal maximum.
         bumperBonusMultiplier += bumperBonusMultiplierIncrement;
@@ -1,6 +1,8 @@
 package com.dozingcatsoftware.vectorpinball.util;
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.LockSupport;
 
 /** This class records how long frames take to generate and display, for assistance in maintaining a
  * consistent frame rate. A FrameRateManager object is created with a list of target frames per second,
@@ -9,7 +11,8 @@ import java.util.LinkedList;
  * maintaining the desired frame rate; if not, it will reduce the target frame rate if possible. 
  * The client can call nanosToWaitUntilNextFrame() to determine the optimum number of nanoseconds
  * to wait before starting the next frame, and sleepUntilNextFrame() to sleep the current thread for
- * that interval.
+ * that interval. Frame start times and durations are kept in preallocated arrays, so recording frames
+ * doesn't allocate.
  * @author brian
  *
  */
@@ -25,9 +28,23 @@ public class FrameRateManager {
 	double targetFrameRateFudgeFactor = 1.015;
 	double[] unfudgedTargetFrameRates; // report un-fudged target frame rates to client
 	
-	LinkedList<Long> previousFrameTimestamps = new LinkedList<Long>();
-	
 	int frameHistorySize = 10;
+	// Ring buffer of the most recent frame start times, oldest at timestampStart. Holds up to
+	// frameHistorySize+1 times, the extra one being removed after computing the frame rate.
+	long[] frameTimestamps = new long[frameHistorySize + 1];
+	int timestampStart = 0;
+	int timestampCount = 0;
+
+	// Ring buffer of the durations between the most recent frame starts, for percentiles in fpsDebugInfo.
+	int frameTimeHistorySize = 120;
+	long[] frameTimes = new long[frameTimeHistorySize];
+	long[] sortedFrameTimes = new long[frameTimeHistorySize];
+	int frameTimeCount = 0;
+	int nextFrameTimeIndex = 0;
+
+	// sleepUntilNextFrame parks the thread until this long before the next frame, and then spins until it's
+	// time. Parking alone can overshoot by up to a millisecond or more, depending on the OS timer.
+	long spinNanos = 500000;
 	boolean allowReducingFrameRate = true;
 	boolean allowLockingFrameRate = true;
 	
@@ -83,7 +100,8 @@ public class FrameRateManager {
 	 * to avoid inaccurate frame rates when it starts again.
 	 */
 	public void clearTimestamps() {
-		previousFrameTimestamps.clear();
+		timestampCount = 0;
+		frameTimeCount = 0;
 		goodFrames = 0;
 		slowFrames = 0;
 		currentFPS = -1;
@@ -119,9 +137,12 @@ public class FrameRateManager {
 	 */
 	public void frameStarted(long time) {
 		++totalFrames;
-		previousFrameTimestamps.add(time);
-		if (previousFrameTimestamps.size() > frameHistorySize) {
-			long firstTime = previousFrameTimestamps.removeFirst();
+		if (timestampCount > 0) {
+			recordFrameTime(time - lastFrameStartTime());
+		}
+		addTimestamp(time);
+		if (timestampCount > frameHistorySize) {
+			long firstTime = removeFirstTimestamp();
 			double seconds = (time - firstTime) / (double)BILLION;
 			currentFPS = frameHistorySize / seconds;
 			
@@ -149,6 +170,29 @@ public class FrameRateManager {
 		}
 	}
 	
+	void addTimestamp(long time) {
+		frameTimestamps[(timestampStart + timestampCount) % frameTimestamps.length] = time;
+		timestampCount++;
+	}
+
+	long removeFirstTimestamp() {
+		long time = frameTimestamps[timestampStart];
+		timestampStart = (timestampStart + 1) % frameTimestamps.length;
+		timestampCount--;
+		return time;
+	}
+
+	long firstTimestamp() {
+		if (timestampCount == 0) throw new NoSuchElementException();
+		return frameTimestamps[timestampStart];
+	}
+
+	void recordFrameTime(long nanos) {
+		frameTimes[nextFrameTimeIndex] = nanos;
+		nextFrameTimeIndex = (nextFrameTimeIndex + 1) % frameTimeHistorySize;
+		if (frameTimeCount < frameTimeHistorySize) frameTimeCount++;
+	}
+
 	/** Calls frameStarted() with the current system time. */
 	public void frameStarted() {
 		frameStarted(System.nanoTime());
@@ -172,14 +216,31 @@ public class FrameRateManager {
 		return String.format("%.1f", currentFPS);
 	}
 	
-	/** Returns a String with debugging info, including current frame rate, target rate, and whether the rate is locked. */
+	/** Returns the given percentile (0 to 100) of the times between recent frame starts, in nanoseconds. Returns 0
+	 * if fewer than two frames have started since the timestamps were cleared.
+	 */
+	public long frameTimePercentileNanos(double percentile) {
+		if (frameTimeCount == 0) return 0;
+		System.arraycopy(frameTimes, 0, sortedFrameTimes, 0, frameTimeCount);
+		Arrays.sort(sortedFrameTimes, 0, frameTimeCount);
+		int index = (int)Math.ceil(frameTimeCount * percentile / 100) - 1;
+		return sortedFrameTimes[Math.max(0, Math.min(frameTimeCount - 1, index))];
+	}
+
+	/** Returns a String with debugging info, including current frame rate, target rate, whether the rate is locked,
+	 * and the median, 99th percentile, and maximum times between recent frames.
+	 */
 	public String fpsDebugInfo() {
-		return String.format("FPS: %.1f target: %.1f %s", currentFPS, targetFramesPerSecond(), (frameRateLocked) ? "(locked)" : "");
+		return String.format("FPS: %.1f target: %.1f %sframe ms: p50=%.2f p99=%.2f max=%.2f",
+				currentFPS, targetFramesPerSecond(), (frameRateLocked) ? "(locked) " : "",
+				frameTimePercentileNanos(50) / (double)MILLION, frameTimePercentileNanos(99) / (double)MILLION,
+				frameTimePercentileNanos(100) / (double)MILLION);
 	}
 	
 	/** Returns the time of the last call to frameStarted(). */
 	public long lastFrameStartTime() {
-		return previousFrameTimestamps.getLast();
+		if (timestampCount == 0) throw new NoSuchElementException();
+		return frameTimestamps[(timestampStart + timestampCount - 1) % frameTimestamps.length];
 	}
 
 	/** Returns the best number of nanoseconds to wait before starting the next frame, based on previously recorded
@@ -187,12 +248,12 @@ public class FrameRateManager {
 	 * nanosToWaitUntilNextFrame(), which calls this method with an argument of System.nanoTime().
 	 */
 	public long nanosToWaitUntilNextFrame(long time) {
-		long lastStartTime = previousFrameTimestamps.getLast();
+		long lastStartTime = lastFrameStartTime();
 		long singleFrameGoalTime = lastStartTime + currentNanosPerFrame;
 		long waitTime = singleFrameGoalTime - time;
 		// adjust based on previous frame rates
-		if (previousFrameTimestamps.size()==frameHistorySize) {
-			long multiFrameGoalTime = previousFrameTimestamps.getFirst() + frameHistorySize*currentNanosPerFrame;
+		if (timestampCount==frameHistorySize) {
+			long multiFrameGoalTime = firstTimestamp() + frameHistorySize*currentNanosPerFrame;
 			long behind = singleFrameGoalTime - multiFrameGoalTime;
 			// behind>0 means we're behind schedule and should decrease wait time
 			// behind<0 means we're ahead of schedule, but don't adjust
@@ -210,18 +271,39 @@ public class FrameRateManager {
 	}
 	
 	/** Sleeps the current thread until the next frame should start generation. The time the current thread sleeps is
-	 * the number of nanoseconds returned by nanosToWaitUntilNextFrame(). Returns immediately if an InterruptedException
-	 * is raised during sleep. Returns the number of nanoseconds slept.
+	 * the number of nanoseconds returned by nanosToWaitUntilNextFrame(). The thread is parked until the spin time
+	 * (see setSpinNanos) before the deadline, and then yields in a loop until the deadline, which is much more precise
+	 * than sleeping for the whole interval. Returns immediately if the thread is interrupted. Returns the number of
+	 * nanoseconds slept.
 	 */
 	public long sleepUntilNextFrame() {
-		long nanos = nanosToWaitUntilNextFrame(System.nanoTime());
-		try {
-			Thread.sleep(nanos/MILLION, (int)(nanos%MILLION));
+		long start = System.nanoTime();
+		long nanos = nanosToWaitUntilNextFrame(start);
+		long deadline = start + nanos;
+		while (!Thread.currentThread().isInterrupted()) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) break;
+			if (remaining > spinNanos) {
+				// Can return early if the thread is unparked, in which case this parks again.
+				LockSupport.parkNanos(this, remaining - spinNanos);
+			}
+			else {
+				Thread.yield();
+			}
 		}
-		catch(InterruptedException ignored) {}
 		return nanos;
 	}
 
+	public long getSpinNanos() {
+		return spinNanos;
+	}
+	/** Sets how long before the next frame sleepUntilNextFrame stops parking the thread and spins instead. Larger
+	 * values make frame timing more precise at the cost of more CPU time; 0 disables spinning. Defaults to 0.5ms.
+	 */
+	public void setSpinNanos(long value) {
+		spinNanos = Math.max(0, value);
+	}
+
 	public boolean allowReducingFrameRate() {
 		return allowReducingFrameRate;
 	}
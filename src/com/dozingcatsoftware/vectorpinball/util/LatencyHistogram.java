@@ -0,0 +1,69 @@
+package com.dozingcatsoftware.vectorpinball.util;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations with power-of-two microsecond buckets: bucket 0 counts durations under
+ * 1 microsecond, and bucket n counts durations from 2^(n-1) to 2^n microseconds. Recording doesn't
+ * allocate. Not synchronized; values should be recorded from one thread, and reads from other
+ * threads may see slightly inconsistent counts.
+ */
+public class LatencyHistogram {
+
+    static final int NUM_BUCKETS = 40;
+
+    final long[] counts = new long[NUM_BUCKETS];
+    long count;
+    long totalNanos;
+    long maxNanos;
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        long micros = nanos / 1000;
+        int bucket = (micros == 0) ? 0 : Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts[bucket]++;
+        count++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = totalNanos = maxNanos = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanNanos() {
+        return (count > 0) ? ((double) totalNanos) / count : 0;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile (0 to 100) of recorded durations in
+     * nanoseconds: the end of the bucket containing it, or the maximum if that's smaller.
+     */
+    public long getPercentileNanos(double percentile) {
+        if (count == 0) return 0;
+        long threshold = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i=0; i<NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= threshold && seen > 0) {
+                return Math.min(maxNanos, (1L << i) * 1000);
+            }
+        }
+        return maxNanos;
+    }
+
+    @Override public String toString() {
+        return String.format("n=%d mean=%.2fms p50<=%.2fms p99<=%.2fms max=%.2fms",
+                count, getMeanNanos() / 1e6, getPercentileNanos(50) / 1e6,
+                getPercentileNanos(99) / 1e6, maxNanos / 1e6);
+    }
+}
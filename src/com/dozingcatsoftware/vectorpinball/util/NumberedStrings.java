@@ -0,0 +1,28 @@
+package com.dozingcatsoftware.vectorpinball.util;
+
+/**
+ * Strings made of a prefix, a whole number, and a suffix, such as "Ball 2" or "3x Multiplier",
+ * created up front for numbers from 0 to a maximum. Game messages are shown while the field is
+ * ticking, and looking them up here avoids building a new string each time.
+ */
+public class NumberedStrings {
+
+    final String prefix;
+    final String suffix;
+    final String[] strings;
+
+    public NumberedStrings(String prefix, String suffix, int maxNumber) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.strings = new String[maxNumber + 1];
+        for (int i=0; i<strings.length; i++) {
+            strings[i] = prefix + i + suffix;
+        }
+    }
+
+    /** Returns the string for the given number, which is only created if it's out of range. */
+    public String get(long number) {
+        if (number >= 0 && number < strings.length) return strings[(int) number];
+        return prefix + number + suffix;
+    }
+}